@@ -0,0 +1,129 @@
+package com.kc2hiz.lpexextensions;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks for the conversion hot paths
+ * <p>Each benchmark runs over a whole synthetic member, so the score is the 
+ * time for one pass over {@code lines} lines.  Run with {@code -prof gc} to 
+ * get allocation per pass.  See bench/README.md.
+ * @author buck
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConversionBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	int lines;
+
+	String[] text;
+	SourceMember member;
+	// procedures with bodies, mostly C-specs
+	SourceMember calcMember;
+	FixedToFreeConverter converter;
+	SpecColumns cols;
+	// first data structure in the member
+	int structureStart;
+
+	@Setup
+	public void setup() {
+		text = new CorpusGenerator(42L).generate(lines);
+		member = new ArraySourceMember(text);
+		calcMember = new ArraySourceMember(new CorpusGenerator(42L, 0, 1, 4).setCalcs(20).generate(lines));
+		converter = new FixedToFreeConverter();
+		cols = new SpecColumns();
+		
+		for (int e = 1; e <= text.length; e++) {
+			if (cols.reset(text[e - 1]).isDefType("ds")) {
+				structureStart = e;
+				break;
+			}
+		}
+	}
+
+	@Benchmark
+	public void getSpecFromTextNaive(Blackhole bh) {
+		for (String sourceStmt: text) {
+			bh.consume(converter.getSpecFromTextNaive(sourceStmt));
+		}
+	}
+
+	@Benchmark
+	public void isComment(Blackhole bh) {
+		for (String sourceStmt: text) {
+			bh.consume(converter.isComment(sourceStmt));
+		}
+	}
+
+	@Benchmark
+	public void getComment(Blackhole bh) {
+		for (String sourceStmt: text) {
+			bh.consume(converter.getComment(sourceStmt));
+		}
+	}
+
+	@Benchmark
+	public void getRhCommentFromText(Blackhole bh) {
+		for (String sourceStmt: text) {
+			bh.consume(converter.getRhCommentFromText(sourceStmt));
+		}
+	}
+
+	@Benchmark
+	public void dSpecConstruction(Blackhole bh) {
+		ContinuationIndex names = new ContinuationIndex(converter, member, 1);
+		for (int e = 1; e <= text.length; e++) {
+			bh.consume(converter.new DSpec(names, text[e - 1], e));
+		}
+	}
+
+	@Benchmark
+	public void getDataTypeKeyword(Blackhole bh) {
+		for (String sourceStmt: text) {
+			cols.reset(sourceStmt);
+			bh.consume(converter.getDataTypeKeyword(cols.fromPosText(), cols.lenText(), 
+					cols.dataTypeText(), cols.decimalsText(), ""));
+		}
+	}
+
+	@Benchmark
+	public void getDataTypeKeywordFromColumns(Blackhole bh) {
+		for (String sourceStmt: text) {
+			bh.consume(converter.getDataTypeKeyword(cols.reset(sourceStmt), ""));
+		}
+	}
+
+	@Benchmark
+	public ConvertedBlock convertStructure() {
+		return converter.getStructureAsFree(member, structureStart);
+	}
+
+	@Benchmark
+	public Object convertMember() {
+		return converter.getMemberAsFree(member);
+	}
+
+	@Benchmark
+	public Object convertCalcMember() {
+		return converter.getMemberAsFree(calcMember);
+	}
+
+}
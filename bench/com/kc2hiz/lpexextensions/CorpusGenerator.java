@@ -0,0 +1,453 @@
+package com.kc2hiz.lpexextensions;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generates fixed-format RPG IV members of any size for benchmarks and 
+ * stress tests
+ * <p>Members are a seeded random mix of H-specs, D-specs (data structures,
+ * standalone fields, constants, prototypes) and P-specs (procedures with a 
+ * PI and local fields).  They include long names continued with ... , 
+ * from/to positions, LIKE with a +n length adjustment, procptr, right hand
+ * comments in columns 81-100, and a **CTDATA compile time table at the end.
+ * Procedures can also be given bodies of C-specs.
+ * The same seed and settings always give the same member.
+ * <p>Lines are written as they are generated, so a member of millions of lines
+ * never has to fit in memory.
+ * <pre>
+ * java com.kc2hiz.lpexextensions.CorpusGenerator output lines [seed] [h:d:p] [members]
+ * </pre>
+ * With more than one member, output is a directory and the members are 
+ * named MBR00001.rpgle and so on, each with its own seed.
+ * @author buck
+ *
+ */
+public class CorpusGenerator {
+
+	private final Random random;
+	// relative weights of H, D and P specs
+	private final int hWeight;
+	private final int dWeight;
+	private final int pWeight;
+	// percentage of each member given over to the compile time table
+	private int tablePercent = 2;
+	// average number of calculations in each procedure
+	private int calcs = 0;
+
+	// lines of the block being generated
+	private final ArrayList<String> block = new ArrayList<String>();
+	private final StringBuilder line = new StringBuilder(100);
+	private int n = 0;
+
+	/**
+	 * @param seed long - random seed
+	 * @param hWeight int - relative weight of H-specs
+	 * @param dWeight int - relative weight of D-spec structures
+	 * @param pWeight int - relative weight of procedures
+	 */
+	public CorpusGenerator(long seed, int hWeight, int dWeight, int pWeight) {
+		this.random = new Random(seed);
+		this.hWeight = hWeight;
+		this.dWeight = dWeight;
+		this.pWeight = pWeight;
+	}
+
+	/**
+	 * A typical mix: mostly D-specs, some procedures, the odd H-spec
+	 * @param seed long - random seed
+	 */
+	public CorpusGenerator(long seed) {
+		this(seed, 1, 8, 2);
+	}
+
+	/**
+	 * @param tablePercent int - percentage of each member for the **CTDATA table
+	 * @return this, for chaining
+	 */
+	public CorpusGenerator setTablePercent(int tablePercent) {
+		this.tablePercent = tablePercent;
+		return this;
+	}
+
+	/**
+	 * Give procedures a body of calculations: EVAL, IF/ELSE, DOWxx/ANDxx, 
+	 * CHAIN and READ with resulting indicators, conditioned and continued
+	 * statements, MOVEL
+	 * @param calcs int - average number of calculations per procedure; 0 for none
+	 * @return this, for chaining
+	 */
+	public CorpusGenerator setCalcs(int calcs) {
+		this.calcs = calcs;
+		return this;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: CorpusGenerator output lines [seed] [h:d:p] [members]");
+			System.exit(2);
+		}
+		Path output = Paths.get(args[0]);
+		int lines = Integer.parseInt(args[1]);
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+		int[] mix = {1, 8, 2};
+		if (args.length > 3) {
+			String[] parts = args[3].split(":");
+			for (int i = 0; i < 3; i++) {
+				mix[i] = Integer.parseInt(parts[i]);
+			}
+		}
+		int members = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+
+		if (members == 1) {
+			write(output, lines, seed, mix);
+			return;
+		}
+		Files.createDirectories(output);
+		for (int m = 1; m <= members; m++) {
+			write(output.resolve(String.format("MBR%05d.rpgle", m)), lines, seed + m, mix);
+		}
+	}
+
+	private static void write(Path path, int lines, long seed, int[] mix) throws IOException {
+		try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.ISO_8859_1)) {
+			new CorpusGenerator(seed, mix[0], mix[1], mix[2]).write(out, lines);
+		}
+	}
+
+	/**
+	 * Generate a member in memory
+	 * @param lines int - number of lines
+	 * @return member String[] - the source lines
+	 */
+	public String[] generate(int lines) {
+		StringWriter out = new StringWriter(lines * 60);
+		try {
+			write(out, lines);
+		} catch (IOException e) {
+			// StringWriter doesn't throw
+			throw new IllegalStateException(e);
+		}
+		// every line is non-empty and ends in a newline
+		return out.toString().split("\n");
+	}
+
+	/**
+	 * Stream a member out, one line at a time
+	 * @param out Writer - where the lines go
+	 * @param lines int - exact number of lines to write
+	 * @throws IOException if the Writer fails
+	 */
+	public void write(Writer out, int lines) throws IOException {
+		int table = lines * tablePercent / 100;
+		int specs = lines - table;
+		int written = 0;
+		int total = hWeight + dWeight + pWeight;
+
+		while (written < specs) {
+			block.clear();
+			int pick = random.nextInt(total);
+			if (pick < hWeight) {
+				hSpec();
+			} else if (pick < hWeight + dWeight) {
+				dSpecs();
+			} else {
+				procedure();
+			}
+			for (int i = 0; i < block.size() && written < specs; i++) {
+				out.write(block.get(i));
+				out.write('\n');
+				written++;
+			}
+		}
+
+		// the compile time table always goes at the end
+		if (table > 0) {
+			out.write("**CTDATA ARR\n");
+			written++;
+			while (written < lines) {
+				// rows that look enough like specs to fool a naive classifier
+				out.write(String.format("%05d D ROW %-20s%8d\n", written, "value" + written, random.nextInt(100000)));
+				written++;
+			}
+		}
+	}
+
+	// ==========================================================
+	// blocks
+
+	private void hSpec() {
+		String[] keywords = {"option(*srcstmt: *nodebugio)", "datfmt(*iso)", "dftactgrp(*no) actgrp(*new)", "debug"};
+		block.add("     h " + keywords[random.nextInt(keywords.length)]);
+	}
+
+	private void dSpecs() {
+		n++;
+		switch (random.nextInt(6)) {
+			case 0:
+			case 1:
+				dataStructure();
+				break;
+			case 2:
+				standalone();
+				break;
+			case 3:
+				spec('d', name("k"), "c", "", "", ' ', "", "const(" + random.nextInt(1000) + ")", "");
+				break;
+			case 4:
+				prototype();
+				break;
+			default:
+				comment();
+				break;
+		}
+	}
+
+	private void dataStructure() {
+		spec('d', name("ds"), "ds", "", "", ' ', "", random.nextBoolean() ? "qualified" : "", rhComment());
+		int subfields = 1 + random.nextInt(30);
+		int pos = 1;
+		for (int i = 0; i < subfields; i++) {
+			if (random.nextInt(4) == 0) {
+				// old style from/to
+				int len = 1 + random.nextInt(20);
+				spec('d', " " + name("ft"), "", String.valueOf(pos), String.valueOf(pos + len - 1), 'a', "", "", rhComment());
+				pos += len;
+			} else {
+				field(" " + name("sf"), "");
+			}
+		}
+	}
+
+	private void standalone() {
+		if (random.nextInt(4) == 0) {
+			// LIKE with a length adjustment
+			spec('d', name("lk"), "s", "", "+" + (1 + random.nextInt(9)), ' ', "", "like(s" + random.nextInt(n) + ")", rhComment());
+			return;
+		}
+		field(name("s"), "s");
+	}
+
+	private void prototype() {
+		spec('d', name("pr"), "pr", "", "", ' ', "", "extproc('PROC" + n + "')", rhComment());
+		int parms = random.nextInt(6);
+		for (int i = 0; i < parms; i++) {
+			field("  " + name("p"), "");
+		}
+	}
+
+	private void procedure() {
+		n++;
+		String name = name("proc");
+		spec('p', name, "b", "", "", ' ', "", "export", "");
+		spec('d', "", "pi", "", "10", 'i', "0", "", "");
+		int parms = random.nextInt(4);
+		for (int i = 0; i < parms; i++) {
+			field("  " + name("p"), "");
+		}
+		int locals = random.nextInt(4);
+		for (int i = 0; i < locals; i++) {
+			n++;
+			standalone();
+		}
+		if (calcs > 0) {
+			calculations();
+		}
+		block.add("     c                   return    0");
+		spec('p', name, "e", "", "", ' ', "", "", "");
+	}
+
+	private void calculations() {
+		String ch = "ch" + n;
+		spec('d', ch, "s", "", "10", 'a', "", "", "");
+		int statements = 1 + random.nextInt(2 * calcs);
+		for (int i = 0; i < statements; i++) {
+			String field = "f" + random.nextInt(n + 1);
+			switch (random.nextInt(8)) {
+				case 0:
+					calc("", "", "EVAL", field + " = " + field + " + 1");
+					break;
+				case 1:
+					calc("", "", "IF", field + " > " + random.nextInt(100));
+					calc("", "", "EVAL", field + " = 0");
+					calc("", "", "ELSE", "");
+					calc("", "", "EVAL(H)", field + " = " + field + " * 1.5");
+					calc("", "", "ENDIF", "");
+					break;
+				case 2:
+					calcs(field, "DOWLT", "100", "", "");
+					calcs("flag", "ANDEQ", "*ON", "", "");
+					calc("", "", "EVAL", field + " = " + field + " + 1");
+					calc("", "", "ENDDO", "");
+					break;
+				case 3:
+					calcs(field, "CHAIN", "CUSTMAST", "", "99    ");
+					break;
+				case 4:
+					calcs("", "READ", "CUSTMAST", "", "    90");
+					break;
+				case 5:
+					calc("N", String.format("%02d", 1 + random.nextInt(99)), "EVAL", field + " = " + random.nextInt(1000));
+					break;
+				case 6:
+					calcs("", "MOVEL", "'AB'", ch, "");
+					break;
+				default:
+					// an expression continued on the next line
+					calc("", "", "EVAL", field + " = " + field + " +");
+					block.add("     c                             " + field + " * 2");
+					break;
+			}
+		}
+	}
+
+	// a C-spec with an extended factor 2
+	private void calc(String not, String indicator, String opcode, String ext) {
+		line.setLength(0);
+		line.append("     c  ");
+		pad(not, 1, false);					// 9
+		pad(indicator, 2, false);			// 10-11
+		pad("", 14, false);					// 12-25
+		pad(opcode, 10, false);				// 26-35
+		line.append(ext);					// 36-80
+		trimAndAdd();
+	}
+
+	// a C-spec with factor 1, factor 2, result and resulting indicators
+	private void calcs(String factor1, String opcode, String factor2, String result, String indicators) {
+		line.setLength(0);
+		line.append("     c     ");
+		pad(factor1, 14, false);			// 12-25
+		pad(opcode, 10, false);				// 26-35
+		pad(factor2, 14, false);			// 36-49
+		pad(result, 14, false);				// 50-63
+		pad("", 7, false);					// 64-70
+		line.append(indicators);			// 71-76
+		trimAndAdd();
+	}
+
+	// a field with a data type; defType is s for standalone, blank for subfields and parameters
+	private void field(String name, String defType) {
+		String kw = "";
+		int digits = 1 + random.nextInt(30);
+		String decimals = String.valueOf(random.nextInt(Math.min(digits, 10) + 1));
+		switch (random.nextInt(8)) {
+			case 0:
+				spec('d', name, defType, "", String.valueOf(1 + random.nextInt(100)), 'a', "", kw, rhComment());
+				break;
+			case 1:
+				spec('d', name, defType, "", String.valueOf(digits), 'p', decimals, kw, rhComment());
+				break;
+			case 2:
+				spec('d', name, defType, "", String.valueOf(digits), 's', decimals, kw, rhComment());
+				break;
+			case 3:
+				spec('d', name, defType, "", String.valueOf(random.nextBoolean() ? 10 : 5), random.nextBoolean() ? 'i' : 'u', "0", kw, rhComment());
+				break;
+			case 4:
+				spec('d', name, defType, "", "8", 'f', "", kw, rhComment());
+				break;
+			case 5:
+				spec('d', name, defType, "", "", '*', "", random.nextBoolean() ? "procptr" : "", rhComment());
+				break;
+			case 6:
+				// no data type: defaults to char, or packed with decimals
+				spec('d', name, defType, "", String.valueOf(1 + random.nextInt(15)), ' ', random.nextBoolean() ? "2" : "", "inz", rhComment());
+				break;
+			default:
+				spec('d', name, defType, "", String.valueOf(1 + random.nextInt(50)), 'a', "", defType.isEmpty() ? "const" : "", "");
+				break;
+		}
+	}
+
+	private void comment() {
+		if (random.nextBoolean()) {
+			block.add("      * comment " + n);
+		} else {
+			block.add("       // comment " + n);
+		}
+	}
+
+	// ==========================================================
+	// line building
+
+	// about one name in six is too long for columns 7-21
+	private String name(String prefix) {
+		if (random.nextInt(6) == 0) {
+			return prefix + "AVeryLongNameThatNeedsContinuation" + n;
+		}
+		return prefix + n;
+	}
+
+	private String rhComment() {
+		return random.nextInt(3) == 0 ? "rh comment " + random.nextInt(1000) : "";
+	}
+
+	/**
+	 * Add one spec, in columns, to the block.  Names too long for columns 7-21 
+	 * go on continuation lines ending in ... ahead of the spec.
+	 */
+	private void spec(char spec, String name, String defType, String from, String len, 
+			char dataType, String decimals, String keywords, String rhComment) {
+		String indent = "";
+		while (indent.length() < name.length() && name.charAt(indent.length()) == ' ') {
+			indent += " ";
+		}
+		String bare = name.trim();
+		if (indent.length() + bare.length() > 15) {
+			block.add("     " + spec + indent + bare + "...");
+			bare = "";
+		}
+
+		line.setLength(0);
+		line.append("     ").append(spec);
+		pad(indent + bare, 15, false);		// 7-21
+		line.append("  ");					// 22-23
+		pad(defType, 2, false);				// 24-25
+		pad(from, 7, true);					// 26-32
+		pad(len, 7, true);					// 33-39
+		line.append(dataType);				// 40
+		pad(decimals, 2, true);				// 41-42
+		line.append(' ');					// 43
+		if (keywords.length() != 0 || rhComment.length() != 0) {
+			pad(keywords, 37, false);		// 44-80
+		}
+		if (rhComment.length() != 0) {
+			line.append(rhComment);			// 81-100
+		}
+		trimAndAdd();
+	}
+
+	// RDi trims each line
+	private void trimAndAdd() {
+		int end = line.length();
+		while (end > 0 && line.charAt(end - 1) == ' ') {
+			end--;
+		}
+		line.setLength(end);
+		block.add(line.toString());
+	}
+
+	private void pad(String value, int width, boolean right) {
+		if (right) {
+			for (int i = value.length(); i < width; i++) {
+				line.append(' ');
+			}
+		}
+		line.append(value, 0, Math.min(value.length(), width));
+		if (!right) {
+			for (int i = value.length(); i < width; i++) {
+				line.append(' ');
+			}
+		}
+	}
+
+}
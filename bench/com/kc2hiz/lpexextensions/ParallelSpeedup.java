@@ -0,0 +1,70 @@
+package com.kc2hiz.lpexextensions;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Speedup of ParallelMemberConverter over the one-pass conversion, by thread count
+ * <p>Converts one large synthetic member (procedures with calculations, so
+ * there are plenty of pieces) in one pass, then in pieces on pools of 1, 2,
+ * 4... threads up to the number of cores.  Each run's output is checked
+ * against the one-pass output, byte for byte.
+ * <pre>
+ * java -cp bench-classes com.kc2hiz.lpexextensions.ParallelSpeedup [lines] [runs]
+ * </pre>
+ * @author buck
+ *
+ */
+public class ParallelSpeedup {
+
+	public static void main(String[] args) throws IOException {
+		int lines = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		SourceMember member = new ArraySourceMember(new CorpusGenerator(42L, 1, 4, 4).setCalcs(10).generate(lines));
+		FixedToFreeConverter converter = new FixedToFreeConverter();
+		byte[] classes = LineClassifier.classify(member);
+
+		String expected = write(converter, member, converter.getMemberAsFree(member, classes));
+		long sequential = Long.MAX_VALUE;
+		for (int r = 0; r < runs; r++) {
+			long start = System.nanoTime();
+			converter.getMemberAsFree(member, classes);
+			sequential = Math.min(sequential, System.nanoTime() - start);
+		}
+		System.out.printf("%d lines, one pass %.1f ms%n", lines, sequential / 1e6);
+		System.out.println("threads   pieces        ms  speedup  identical");
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			ParallelMemberConverter parallel = new ParallelMemberConverter(converter, pool, ParallelMemberConverter.MIN_PIECE);
+			try {
+				boolean identical = expected.equals(write(converter, member, parallel.getMemberAsFree(member, classes)));
+				long best = Long.MAX_VALUE;
+				for (int r = 0; r < runs; r++) {
+					long start = System.nanoTime();
+					parallel.getMemberAsFree(member, classes);
+					best = Math.min(best, System.nanoTime() - start);
+				}
+				System.out.printf("%7d %8d %9.1f %8.2f  %s%n", threads, parallel.pieces(member, classes).length - 1,
+						best / 1e6, (double) sequential / best, identical ? "yes" : "NO");
+			} finally {
+				pool.shutdown();
+			}
+			if (threads == cores) {
+				break;
+			}
+		}
+	}
+
+	private static String write(FixedToFreeConverter converter, SourceMember member,
+			ArrayList<ConvertedBlock> blocks) throws IOException {
+		StringWriter out = new StringWriter();
+		converter.writeMemberAsFree(member, blocks, out);
+		return out.toString();
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.kc2hiz.lpexextensions;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event for one phase of a conversion
+ * <p>This is the one class in the com.kc2hiz.lpexextensions.jfr fragment.
+ * ConversionStats finds Recording by name, so the plug-in builds for Java 8
+ * and still loads without the fragment or on a JVM without jdk.jfr.  The 
+ * duration is the event's own start and end time.
+ * @author buck
+ *
+ */
+@Name("com.kc2hiz.lpexextensions.Conversion")
+@Label("Fixed to Free Conversion")
+@Category({"LPEX", "Fixed to Free"})
+@Description("One phase of converting fixed-form specs to free form")
+class ConversionEvent extends Event {
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Element")
+	@Description("First element the phase worked on")
+	int element;
+
+	@Label("Lines")
+	@Description("Lines classified, parsed, resolved or inserted")
+	int lines;
+
+	private static final EventType TYPE = EventType.getEventType(ConversionEvent.class);
+
+	/**
+	 * Makes and commits ConversionEvents for ConversionStats
+	 */
+	static final class Recording implements ConversionStats.Recorder {
+
+		@Override
+		public boolean available() {
+			return FlightRecorder.isAvailable();
+		}
+
+		@Override
+		public Object start() {
+			if (!TYPE.isEnabled()) {
+				return null;
+			}
+			ConversionEvent event = new ConversionEvent();
+			event.begin();
+			return event;
+		}
+
+		@Override
+		public void finish(Object started, String phase, int element, int lines) {
+			ConversionEvent event = (ConversionEvent) started;
+			event.end();
+			if (event.shouldCommit()) {
+				event.phase = phase;
+				event.element = element;
+				event.lines = lines;
+				event.commit();
+			}
+		}
+	}
+
+}
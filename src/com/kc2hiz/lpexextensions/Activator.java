@@ -30,6 +30,9 @@ public class Activator extends AbstractUIPlugin implements com.ibm.lpex.alef.Lpe
     public void start(BundleContext context) throws Exception {
         super.start(context);
         plugin = this;
+
+        // set up the trace logger once, rather than in every action
+        Trace.init();
     }
 
     /*
@@ -0,0 +1,39 @@
+package com.kc2hiz.lpexextensions;
+
+import java.util.List;
+
+/**
+ * A source member held in memory as an array of lines
+ * <p>Used by batch jobs and benchmarks, where there is no editor.
+ * @author buck
+ *
+ */
+public class ArraySourceMember implements SourceMember {
+
+	private final String[] lines;
+
+	/**
+	 * @param lines String[] the source lines; lines[0] is element 1
+	 */
+	public ArraySourceMember(String[] lines) {
+		this.lines = lines;
+	}
+
+	/**
+	 * @param lines List the source lines; the first entry is element 1
+	 */
+	public ArraySourceMember(List<String> lines) {
+		this.lines = lines.toArray(new String[lines.size()]);
+	}
+
+	@Override
+	public int elements() {
+		return lines.length;
+	}
+
+	@Override
+	public String elementText(int element) {
+		return lines[element - 1];
+	}
+
+}
@@ -0,0 +1,205 @@
+package com.kc2hiz.lpexextensions;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Command line fixed-to-free conversion of a tree of exported source members
+ * <p>Every regular file under the source directory is treated as one member.
+ * The converted member (fixed-form lines kept, free-form lines added after
+ * each structure, as ConvertMemberToFreeAction does) is written to the same
+ * relative path under the output directory.
+ * <p>Members are memory mapped, not read into Strings; see MappedSourceMember.
+ * With -records, members are fixed-length source records (sequence number
+ * and date, then the source) as saved from a source physical file, and are
+ * written out as plain lines.  With -ccsid, members saved from the IBM i
+ * in EBCDIC (CCSID 37, 273 or 500) are decoded as they're read, with no
+ * transcoding pass ahead of the conversion.
+ * <p>Members are spread over a fork-join pool, so idle threads steal work
+ * from busy ones.  A very large member is cut into pieces that go on the
+ * same pool, so one big member doesn't leave the other threads idle.
+ * <pre>
+ * java com.kc2hiz.lpexextensions.BatchConvert [-records [length]] [-ccsid 37|273|500] sourceDir outputDir [threads]
+ * </pre>
+ * @author buck
+ * @version 01.00.00 Initial
+ * @version 01.00.01 Convert large members in pieces
+ * @version 01.01.00 Map members instead of reading them; fixed-length records
+ * @version 01.01.01 EBCDIC members
+ *
+ */
+public class BatchConvert {
+
+	// members are read and written as single byte text so nothing is lost 
+	// moving columns around, whatever the code page
+	static final Charset CHARSET = StandardCharsets.ISO_8859_1;
+
+	// below this many members a task converts them itself rather than splitting
+	static final int THRESHOLD = 4;
+	// members this long are split up as well; see ParallelMemberConverter
+	static final int SPLIT_LINES = 4 * ParallelMemberConverter.MIN_PIECE;
+
+	private final Path sourceDir;
+	private final Path outputDir;
+	// bytes per record for fixed-length record members; 0 for lines
+	int recordLength = 0;
+	// what the members are encoded in; the output is always CHARSET
+	int ccsid = MappedSourceMember.LATIN1;
+
+	final AtomicInteger members = new AtomicInteger();
+	final AtomicInteger failures = new AtomicInteger();
+	final AtomicLong lines = new AtomicLong();
+	final AtomicLong blocks = new AtomicLong();
+
+	public BatchConvert(Path sourceDir, Path outputDir) {
+		this.sourceDir = sourceDir;
+		this.outputDir = outputDir;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int a = 0;
+		int recordLength = 0;
+		int ccsid = MappedSourceMember.LATIN1;
+		while (args.length > a && args[a].startsWith("-")) {
+			if (args[a].equals("-records")) {
+				a++;
+				recordLength = MappedSourceMember.RECORD_LENGTH;
+				if (args.length > a && args[a].matches("[0-9]+")) {
+					recordLength = Integer.parseInt(args[a++]);
+				}
+			} else if (args[a].equals("-ccsid") && args.length > a + 1) {
+				ccsid = Integer.parseInt(args[a + 1]);
+				a += 2;
+			} else {
+				break;
+			}
+		}
+		if (args.length < a + 2) {
+			System.err.println("usage: BatchConvert [-records [length]] [-ccsid 37|273|500] sourceDir outputDir [threads]");
+			System.exit(2);
+		}
+		
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (args.length > a + 2) {
+			threads = Integer.parseInt(args[a + 2]);
+		}
+		
+		BatchConvert batch = new BatchConvert(Paths.get(args[a]), Paths.get(args[a + 1]));
+		batch.recordLength = recordLength;
+		batch.ccsid = ccsid;
+		long elapsed = batch.run(threads);
+		batch.report(System.out, threads, elapsed);
+		
+		if (batch.failures.get() != 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Convert every member under the source directory
+	 * @param threads int - parallelism of the fork-join pool
+	 * @return elapsed long - nanoseconds spent converting
+	 * @throws IOException if the source tree can't be read
+	 */
+	long run(int threads) throws IOException {
+		List<Path> paths;
+		try (Stream<Path> walk = Files.walk(sourceDir)) {
+			paths = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long start = System.nanoTime();
+		try {
+			pool.invoke(new ConvertTask(paths, 0, paths.size()));
+		} finally {
+			pool.shutdown();
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Print the totals and the throughput
+	 * @param out java.io.PrintStream
+	 * @param threads int
+	 * @param elapsed long nanoseconds
+	 */
+	void report(java.io.PrintStream out, int threads, long elapsed) {
+		double seconds = elapsed / 1e9;
+		out.printf("%d members, %d lines, %d blocks converted, %d failed%n",
+				members.get(), lines.get(), blocks.get(), failures.get());
+		out.printf("%d threads, %.3f s, %.1f members/s, %.0f lines/s%n",
+				threads, seconds, members.get() / seconds, lines.get() / seconds);
+	}
+
+	/**
+	 * Convert one member file
+	 * @param source Path - the exported member
+	 */
+	void convertMember(Path source) {
+		Path target = outputDir.resolve(sourceDir.relativize(source));
+		try {
+			SourceMember member = recordLength > 0 ?
+					MappedSourceMember.records(source, recordLength, ccsid) :
+					MappedSourceMember.lines(source, ccsid);
+			
+			if (target.getParent() != null) {
+				Files.createDirectories(target.getParent());
+			}
+			// a big member is converted in pieces, on this pool, as well;
+			// any other is written as it's converted
+			FixedToFreeConverter converter = new FixedToFreeConverter();
+			try (BufferedWriter out = Files.newBufferedWriter(target, CHARSET)) {
+				blocks.addAndGet(member.elements() >= SPLIT_LINES ?
+						converter.writeMemberAsFree(member, new ParallelMemberConverter(converter).getMemberAsFree(member), out) :
+						converter.writeMemberAsFree(member, out));
+			}
+			members.incrementAndGet();
+			lines.addAndGet(member.elements());
+		} catch (IOException | RuntimeException e) {
+			failures.incrementAndGet();
+			System.err.println(source + ": " + e);
+		}
+	}
+
+	/**
+	 * Splits the list of members in half until the pieces are small
+	 * enough to convert directly
+	 */
+	class ConvertTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<Path> paths;
+		private final int from;
+		private final int to;
+
+		ConvertTask(List<Path> paths, int from, int to) {
+			this.paths = paths;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					convertMember(paths.get(i));
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new ConvertTask(paths, from, mid), new ConvertTask(paths, mid, to));
+		}
+	}
+
+}
@@ -0,0 +1,923 @@
+package com.kc2hiz.lpexextensions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Convert fixed-form calculations (C-specs) to fully free
+ * <p>Works forward over a member, one statement at a time.  A statement is
+ * any conditioning lines (AN/OR), the opcode line, extended factor 2
+ * continuation lines and ANDxx/ORxx lines.  The columns are read in place
+ * through a SpecColumns.
+ * <p>One instance is used for a whole pass over a member, because it keeps
+ * track of the IF, DO, SELECT and BEGSR groups that are open: END needs
+ * that to know what it is ending, and the free-form lines are indented by it.
+ * <p>Only what free form can say exactly the same way is converted:
+ * EVAL and friends, IF/ELSE/ENDIF, DOW/DOU/ENDDO, SELECT/WHEN/OTHER, the
+ * IFxx/DOWxx/DOUxx/WHENxx comparisons, CHAIN, READ, SETLL, WRITE, UPDATE,
+ * DELETE, subroutines, CALLP, RETURN, LEAVE, ITER, and MOVE/MOVEL between
+ * fixed-length character fields the member defines.  Conditioning indicators
+ * become an IF around the statement, and resulting indicators become
+ * assignments from %found, %eof, %equal and %error.  Anything else (cycle
+ * control levels, result fields defined on the C-spec, numeric moves,
+ * key lists...) stops the conversion for that statement.
+ * @author buck
+ *
+ */
+public class CSpecConverter {
+
+	private static final String INDENT = FreeFormEmitter.indent(FreeFormEmitter.DECLARE);
+
+	// stack entries for the open groups
+	private static final String IF = "if";
+	private static final String DO = "do";
+	private static final String SELECT = "sl";
+	private static final String SUBROUTINE = "sr";
+	// a group that was not converted; nothing that belongs to it can be
+	private static final String UNKNOWN = "?";
+
+	private final FixedToFreeConverter converter;
+	private final SourceMember member;
+	private final byte[] classes;
+	private final SpecColumns cols = new SpecColumns();
+
+	// open groups, innermost last
+	private final ArrayList<String> open = new ArrayList<String>();
+	// the last operation was a CASxx or CAS; the next one shares its ENDCS
+	private boolean inCases = false;
+
+	// key list names and fixed-length character fields, gathered on first need
+	private HashSet<String> keyLists = null;
+	private HashMap<String, Integer> charFields = null;
+	// the converter that gathers them: this one, or one shared over a member
+	private final CSpecConverter namesFrom;
+
+	// last element read by convertRun, converted or not
+	private int consumedTo = 0;
+
+	// the statement being worked on
+	private int last;
+	private String unusable;
+	private final StringBuilder conditions = new StringBuilder();
+	private String opcode;
+	private String extender;
+	private String factor1;
+	private String factor2;
+	private String result;
+	private String extFactor2;
+	private final StringBuilder andOr = new StringBuilder();
+	private String hi;
+	private String lo;
+	private String eq;
+	private String rhComment;
+	private final ArrayList<String> comments = new ArrayList<String>();
+
+	/**
+	 * @param converter FixedToFreeConverter - supplies the comment rules
+	 * @param member SourceMember - the member we're working on
+	 * @param classes byte[] - LineClassifier codes by element, or null to classify as we go
+	 */
+	public CSpecConverter(FixedToFreeConverter converter, SourceMember member, byte[] classes) {
+		this(converter, member, classes, null);
+	}
+
+	/**
+	 * For one piece of a member that is converted in pieces
+	 * @param converter FixedToFreeConverter - supplies the comment rules
+	 * @param member SourceMember - the member we're working on
+	 * @param classes byte[] - LineClassifier codes by element, or null to classify as we go
+	 * @param namesFrom CSpecConverter - gathers the key lists and character fields
+	 * for the whole member, once; null to gather them here
+	 */
+	public CSpecConverter(FixedToFreeConverter converter, SourceMember member, byte[] classes, CSpecConverter namesFrom) {
+		this.converter = converter;
+		this.member = member;
+		this.classes = classes;
+		this.namesFrom = namesFrom == null ? this : namesFrom;
+	}
+
+	/**
+	 * Convert calculations starting at an element, for as long as they can be
+	 * <p>The run stops at the first line that isn't a C-spec or a comment, or
+	 * at the first statement that can't be converted.  That statement is still
+	 * read, so consumedTo() is past it.
+	 * @param element int - element number of a C-spec
+	 * @return block ConvertedBlock - or null if the first statement can't be converted
+	 */
+	public ConvertedBlock convertRun(int element) {
+		return convertRun(element, member.elements());
+	}
+
+	/**
+	 * Convert calculations starting at an element, but don't start a 
+	 * statement after a limit
+	 * @param element int - element number of a C-spec
+	 * @param limit int - last element a statement can start on
+	 * @return block ConvertedBlock - or null if the first statement can't be converted
+	 */
+	public ConvertedBlock convertRun(int element, int limit) {
+		ConvertedBlock block = null;
+		ArrayList<String> pendingComments = new ArrayList<String>();
+		ArrayList<String> lines = new ArrayList<String>();
+		int elements = Math.min(limit, member.elements());
+		consumedTo = element;
+
+		for (int e = element; e <= elements; e++) {
+			byte code = code(e);
+
+			// comments go along with the statement after them
+			if (LineClassifier.isComment(code)) {
+				pendingComments.add(converter.getComment(member.elementText(e)).trim());
+				continue;
+			}
+			if (LineClassifier.spec(code) != 'c') {
+				break;
+			}
+
+			lines.clear();
+			boolean converted = convert(e, lines);
+			consumedTo = last;
+			if (!converted) {
+				break;
+			}
+
+			if (block == null) {
+				block = new ConvertedBlock(e);
+			}
+			for (String comment: pendingComments) {
+				block.lines.add(indent() + "// " + comment);
+			}
+			pendingComments.clear();
+			block.lines.addAll(lines);
+			block.lastElement = last;
+			e = last;
+		}
+		return block;
+	}
+
+	/**
+	 * Convert the one statement that starts on an element
+	 * @param element int - element number of a C-spec
+	 * @return block ConvertedBlock - or null if it can't be converted; see unusable()
+	 */
+	public ConvertedBlock convertStatement(int element) {
+		ConvertedBlock block = new ConvertedBlock(element);
+		if (!convert(element, block.lines)) {
+			return null;
+		}
+		block.lastElement = last;
+		return block;
+	}
+
+	/**
+	 * @return element int - the last element convertRun read
+	 */
+	public int consumedTo() {
+		return consumedTo;
+	}
+
+	/**
+	 * @return true if an IF, DO, SELECT or BEGSR group is still open
+	 */
+	public boolean groupsOpen() {
+		return !open.isEmpty();
+	}
+
+	/**
+	 * @return reason String - why the last statement wasn't converted
+	 */
+	public String unusable() {
+		return unusable;
+	}
+
+	// ==========================================================
+	// one statement
+
+	// read, generate and keep track of the groups
+	private boolean convert(int element, ArrayList<String> lines) {
+		Object event = ConversionStats.begin();
+		read(element);
+		boolean converted = unusable.length() == 0 && generate(lines);
+		track(converted);
+		ConversionStats.end(event, ConversionStats.PARSE_C, element, last - element + 1);
+		return converted;
+	}
+
+	private byte code(int element) {
+		return classes != null ? classes[element] : LineClassifier.classify(member.elementChars(element));
+	}
+
+	// pick up all the lines of the statement starting at element
+	private void read(int element) {
+		last = element;
+		unusable = "";
+		conditions.setLength(0);
+		andOr.setLength(0);
+		comments.clear();
+		opcode = "";
+		extender = "";
+		factor1 = "";
+		factor2 = "";
+		result = "";
+		extFactor2 = "";
+		hi = "";
+		lo = "";
+		eq = "";
+		rhComment = "";
+
+		int elements = member.elements();
+		int e = element;
+
+		// conditioning lines, then the line with the opcode
+		while (true) {
+			cols.reset(member.elementChars(e));
+			last = e;
+			if (!addCondition()) {
+				// the groups still need to know what this was
+				readOpcode();
+				return;
+			}
+			if (!cols.isBlank(SpecColumns.OPCODE, SpecColumns.OPCODE_END)) {
+				break;
+			}
+			if (cols.isBlank(SpecColumns.CONDITION_NOT, SpecColumns.CONDITION_END) ||
+					!cols.isBlank(SpecColumns.FACTOR1, SpecColumns.EXT_FACTOR2_END)) {
+				unusable = "No operation code";
+				return;
+			}
+			e++;
+			if (e > elements || LineClassifier.spec(code(e)) != 'c') {
+				unusable = "Conditioning indicators with no operation";
+				return;
+			}
+		}
+
+		readOpcode();
+		rhComment = cols.rhComment();
+
+		if (isExtFactor2(opcode)) {
+			if (!cols.isBlank(SpecColumns.FACTOR1, SpecColumns.FACTOR1_END)) {
+				unusable = "Factor 1 with " + opcode;
+				return;
+			}
+			readExtFactor2(e);
+			return;
+		}
+
+		factor1 = cols.trimmed(SpecColumns.FACTOR1, SpecColumns.FACTOR1_END);
+		factor2 = cols.trimmed(SpecColumns.FACTOR2, SpecColumns.FACTOR2_END);
+		result = cols.trimmed(SpecColumns.RESULT, SpecColumns.RESULT_END);
+		hi = cols.lower(SpecColumns.HI, SpecColumns.LO);
+		lo = cols.lower(SpecColumns.LO, SpecColumns.EQ);
+		eq = cols.lower(SpecColumns.EQ, SpecColumns.INDICATORS_END);
+		if (!cols.isBlank(SpecColumns.FIELD_LEN, SpecColumns.FIELD_DECIMALS_END)) {
+			unusable = "Result field defined on the C-spec; define it on a D-spec first";
+			return;
+		}
+
+		// ANDxx / ORxx carry on an xx comparison
+		if (comparison(opcode) != null) {
+			andOr.append(factor1).append(' ').append(comparison(opcode)).append(' ').append(factor2);
+			while (last < elements && LineClassifier.spec(code(last + 1)) == 'c') {
+				cols.reset(member.elementChars(last + 1));
+				String next = cols.lower(SpecColumns.OPCODE, SpecColumns.OPCODE_END);
+				String joiner = next.startsWith("and") ? "and" : next.startsWith("or") ? "or" : null;
+				if (joiner == null || comparison(next) == null ||
+						!cols.isBlank(SpecColumns.CONTROL_LEVEL, SpecColumns.CONDITION_END)) {
+					break;
+				}
+				andOr.append(' ').append(joiner).append(' ')
+					.append(cols.trimmed(SpecColumns.FACTOR1, SpecColumns.FACTOR1_END))
+					.append(' ').append(comparison(next)).append(' ')
+					.append(cols.trimmed(SpecColumns.FACTOR2, SpecColumns.FACTOR2_END));
+				last++;
+			}
+		}
+	}
+
+	// opcode and extender of the line in cols
+	private void readOpcode() {
+		String op = cols.lower(SpecColumns.OPCODE, SpecColumns.OPCODE_END);
+		int paren = op.indexOf('(');
+		if (paren >= 0 && op.endsWith(")")) {
+			opcode = op.substring(0, paren);
+			extender = op.substring(paren + 1, op.length() - 1).trim();
+		} else {
+			opcode = op;
+		}
+	}
+
+	// control level and conditioning indicator of the line in cols
+	private boolean addCondition() {
+		String level = cols.lower(SpecColumns.CONTROL_LEVEL, SpecColumns.CONTROL_LEVEL_END);
+		String joiner = " and ";
+		if (level.equals("or")) {
+			joiner = " or ";
+		} else if (level.length() != 0 && !level.equals("an") && !level.equals("sr")) {
+			unusable = "Control level " + level + " is cycle only";
+			return false;
+		}
+		if ((level.equals("an") || level.equals("or")) && conditions.length() == 0) {
+			unusable = "AN/OR with nothing before it";
+			return false;
+		}
+
+		String indicator = cols.lower(SpecColumns.CONDITION, SpecColumns.CONDITION_END);
+		if (indicator.length() == 0) {
+			return true;
+		}
+		String name = indicatorName(indicator);
+		if (name == null) {
+			unusable = "Indicator " + indicator + " is cycle only";
+			return false;
+		}
+		if (conditions.length() != 0) {
+			conditions.append(joiner);
+		}
+		if (cols.column(SpecColumns.CONDITION_NOT) == 'n') {
+			conditions.append("not ");
+		}
+		conditions.append(name);
+		return true;
+	}
+
+	// the rest of an extended factor 2, from the continuation lines
+	private void readExtFactor2(int e) {
+		StringBuilder ext = new StringBuilder(cols.trimmed(SpecColumns.EXT_FACTOR2, SpecColumns.EXT_FACTOR2_END));
+		int elements = member.elements();
+		ArrayList<String> pendingComments = new ArrayList<String>();
+
+		for (int next = e + 1; next <= elements; next++) {
+			byte code = code(next);
+			if (LineClassifier.isComment(code)) {
+				pendingComments.add(converter.getComment(member.elementText(next)).trim());
+				continue;
+			}
+			if (LineClassifier.spec(code) != 'c') {
+				break;
+			}
+			cols.reset(member.elementChars(next));
+			if (!cols.isBlank(SpecColumns.CONTROL_LEVEL, SpecColumns.EXT_FACTOR2) ||
+					cols.isBlank(SpecColumns.EXT_FACTOR2, SpecColumns.EXT_FACTOR2_END)) {
+				break;
+			}
+
+			int length = ext.length();
+			boolean inLiteral = quotes(ext) % 2 != 0;
+			if (inLiteral && length > 0 && ext.charAt(length - 1) == '+') {
+				// literal carries on from the first non-blank
+				ext.setLength(length - 1);
+				ext.append(cols.trimmed(SpecColumns.EXT_FACTOR2, SpecColumns.EXT_FACTOR2_END));
+			} else if (inLiteral && length > 0 && ext.charAt(length - 1) == '-') {
+				// literal carries on from column 36, blanks and all
+				ext.setLength(length - 1);
+				CharSequence text = cols.text();
+				ext.append(text, SpecColumns.EXT_FACTOR2,
+						Math.min(text.length(), SpecColumns.EXT_FACTOR2_END));
+				while (ext.length() > 0 && ext.charAt(ext.length() - 1) == ' ') {
+					ext.setLength(ext.length() - 1);
+				}
+			} else if (inLiteral) {
+				unusable = "Literal continued without + or -";
+				return;
+			} else if (length >= 3 && ext.charAt(length - 1) == '.' &&
+					ext.charAt(length - 2) == '.' && ext.charAt(length - 3) == '.') {
+				// a name continued with ...
+				ext.setLength(length - 3);
+				ext.append(cols.trimmed(SpecColumns.EXT_FACTOR2, SpecColumns.EXT_FACTOR2_END));
+			} else {
+				ext.append(' ').append(cols.trimmed(SpecColumns.EXT_FACTOR2, SpecColumns.EXT_FACTOR2_END));
+			}
+			if (rhComment.length() == 0) {
+				rhComment = cols.rhComment();
+			}
+			comments.addAll(pendingComments);
+			pendingComments.clear();
+			last = next;
+		}
+		extFactor2 = ext.toString();
+	}
+
+	// ==========================================================
+	// free-form lines for the statement just read
+
+	private boolean generate(ArrayList<String> lines) {
+		if ((closes(opcode) || isMiddle(opcode)) && 
+				!open.isEmpty() && open.get(open.size() - 1).equals(UNKNOWN)) {
+			unusable = opcode + " belongs to a group that wasn't converted";
+			return false;
+		}
+		String statement = statement();
+		if (statement == null) {
+			return false;
+		}
+
+		// groups open, close and carry on at the indentation outside them
+		String indent;
+		if (isGroupOp()) {
+			if (conditions.length() != 0) {
+				unusable = "Conditioning indicators on " + opcode;
+				return false;
+			}
+			int depth = open.size();
+			if (closes(opcode) || isMiddle(opcode)) {
+				depth--;
+			}
+			indent = indent(depth);
+		} else {
+			indent = indent();
+		}
+
+		String inner = indent;
+		if (conditions.length() != 0) {
+			lines.add(indent + "if " + conditions + ";");
+			inner = indent + "  ";
+		}
+		lines.add(inner + statement + ";" + (rhComment.length() != 0 ? " // " + rhComment : ""));
+		addIndicators(inner, lines);
+		for (String comment: comments) {
+			lines.add(inner + "// " + comment);
+		}
+		if (conditions.length() != 0) {
+			lines.add(indent + "endif;");
+		}
+		return true;
+	}
+
+	// the statement itself, without the semicolon; null if it can't be done
+	private String statement() {
+		String ext = extender.length() != 0 ? "(" + extender + ")" : "";
+
+		if (isExtFactor2(opcode)) {
+			if (opcode.equals("eval") && extender.length() == 0) {
+				return require(extFactor2);
+			}
+			if (opcode.equals("callp") && extender.length() == 0) {
+				return require(extFactor2);
+			}
+			if (opcode.equals("return") && extFactor2.length() == 0) {
+				return "return" + ext;
+			}
+			return extFactor2.length() == 0 ? require("") : opcode + ext + " " + extFactor2;
+		}
+
+		// anything left needs its resulting indicators checked
+		if (!indicatorsAllowed()) {
+			return null;
+		}
+
+		String compare = comparison(opcode);
+		if (compare != null) {
+			String base = opcode.substring(0, opcode.length() - 2);
+			if (!base.equals("if") && !base.equals("dow") && !base.equals("dou") && !base.equals("when")) {
+				unusable = "Operation " + opcode;
+				return null;
+			}
+			return base + " " + andOr;
+		}
+
+		switch (opcode) {
+			case "else":
+			case "other":
+			case "select":
+			case "leave":
+			case "iter":
+			case "endif":
+			case "enddo":
+			case "endsl":
+				return noFactors() ? opcode : null;
+			case "end":
+				if (!noFactors()) {
+					return null;
+				}
+				String group = open.isEmpty() ? UNKNOWN : open.get(open.size() - 1);
+				if (group.equals(IF) || group.equals(DO) || group.equals(SELECT)) {
+					return "end" + (group.equals(SELECT) ? "sl" : group);
+				}
+				unusable = "END of a group that wasn't converted";
+				return null;
+			case "begsr":
+				return factor1.length() != 0 && factor2.length() == 0 ? "begsr " + factor1 : require("");
+			case "endsr":
+				return noFactors() ? "endsr" : null;
+			case "exsr":
+				return factor1.length() == 0 && factor2.length() != 0 ? "exsr " + factor2 : require("");
+			case "chain":
+			case "reade":
+			case "readpe":
+			case "setll":
+			case "setgt":
+				if (factor1.length() == 0 || factor2.length() == 0 || isKeyList(factor1)) {
+					unusable = "Key list or missing factor with " + opcode;
+					return null;
+				}
+				return opcode + errorExtender(ext) + " " + factor1 + " " + factor2 +
+						(result.length() != 0 ? " " + result : "");
+			case "read":
+			case "readp":
+			case "write":
+			case "update":
+				if (factor1.length() != 0 || factor2.length() == 0) {
+					return require("");
+				}
+				return opcode + errorExtender(ext) + " " + factor2 + (result.length() != 0 ? " " + result : "");
+			case "delete":
+				if (factor2.length() == 0 || isKeyList(factor1)) {
+					return require("");
+				}
+				return opcode + errorExtender(ext) + (factor1.length() != 0 ? " " + factor1 : "") + " " + factor2;
+			case "move":
+			case "movel":
+				return move();
+			default:
+				unusable = "Operation " + opcode + " isn't converted";
+				return null;
+		}
+	}
+
+	// resulting indicators the opcode can have, as assignments after it
+	private boolean indicatorsAllowed() {
+		String allowed;
+		switch (opcode) {
+			case "chain":
+			case "delete":
+			case "setgt":
+				allowed = "hl";
+				break;
+			case "read":
+			case "readp":
+			case "reade":
+			case "readpe":
+			case "write":
+				allowed = "le";
+				break;
+			case "setll":
+				allowed = "hle";
+				break;
+			case "update":
+				allowed = "l";
+				break;
+			default:
+				allowed = "";
+				break;
+		}
+		if ((hi.length() != 0 && allowed.indexOf('h') < 0) ||
+				(lo.length() != 0 && allowed.indexOf('l') < 0) ||
+				(eq.length() != 0 && allowed.indexOf('e') < 0)) {
+			unusable = "Resulting indicators on " + opcode;
+			return false;
+		}
+		if ((hi.length() != 0 && indicatorName(hi) == null) ||
+				(lo.length() != 0 && indicatorName(lo) == null) ||
+				(eq.length() != 0 && indicatorName(eq) == null)) {
+			unusable = "Resulting indicator isn't one free form has";
+			return false;
+		}
+		return true;
+	}
+
+	private void addIndicators(String indent, ArrayList<String> lines) {
+		if (isExtFactor2(opcode)) {
+			return;
+		}
+		if (hi.length() != 0) {
+			lines.add(indent + indicatorName(hi) + " = not %found();");
+		}
+		if (lo.length() != 0) {
+			lines.add(indent + indicatorName(lo) + " = %error();");
+		}
+		if (eq.length() != 0) {
+			lines.add(indent + indicatorName(eq) + (opcode.equals("setll") ? " = %equal();" : " = %eof();"));
+		}
+	}
+
+	// the error indicator becomes the (e) extender
+	private String errorExtender(String ext) {
+		if (lo.length() == 0 || extender.indexOf('e') >= 0) {
+			return ext;
+		}
+		return "(" + extender + "e)";
+	}
+
+	/**
+	 * MOVE and MOVEL, only between fixed-length character fields and
+	 * literals, where an assignment does exactly the same thing
+	 */
+	private String move() {
+		if (factor1.length() != 0 || extender.replace("p", "").length() != 0) {
+			unusable = "MOVE with factor 1 or extender " + extender;
+			return null;
+		}
+		int target = charLength(result);
+		if (target < 1) {
+			unusable = "MOVE to " + result + ", which isn't a fixed-length character field";
+			return null;
+		}
+
+		// figurative constants fill the whole target either way
+		String upper = factor2.toUpperCase();
+		if (upper.equals("*BLANK") || upper.equals("*BLANKS")) {
+			return result + " = *blanks";
+		}
+		int source = literalLength(factor2);
+		if (source < 0) {
+			source = charLength(factor2);
+		}
+		if (source < 1) {
+			unusable = "MOVE from " + factor2 + ", which isn't a character literal or fixed-length character field";
+			return null;
+		}
+
+		boolean left = opcode.equals("movel");
+		boolean pad = extender.equals("p");
+		if (pad || source >= target) {
+			return (left ? "" : "evalr ") + result + " = " + factor2;
+		}
+		if (left) {
+			return "%subst(" + result + ": 1: " + source + ") = " + factor2;
+		}
+		return "%subst(" + result + ": " + (target - source + 1) + ") = " + factor2;
+	}
+
+	// ==========================================================
+	// keeping track of the groups
+
+	private void track(boolean converted) {
+		if (opcode.length() == 0) {
+			return;
+		}
+		// a run of CASxx, and the CAS that may end it, is one group
+		boolean cases = isCase(opcode);
+		boolean sameRun = cases && inCases;
+		inCases = cases;
+		if (sameRun) {
+			return;
+		}
+		if (opens(opcode)) {
+			String group = UNKNOWN;
+			if (converted) {
+				group = opcode.startsWith("if") ? IF :
+					opcode.equals("select") ? SELECT :
+					opcode.equals("begsr") ? SUBROUTINE : DO;
+			}
+			open.add(group);
+		} else if (closes(opcode) && !open.isEmpty()) {
+			open.remove(open.size() - 1);
+		}
+	}
+
+	private boolean isGroupOp() {
+		return opens(opcode) || closes(opcode) || isMiddle(opcode);
+	}
+
+	private static boolean opens(String opcode) {
+		return opcode.equals("if") || opcode.equals("dow") || opcode.equals("dou") ||
+				opcode.equals("do") || opcode.equals("for") || opcode.equals("select") ||
+				opcode.equals("begsr") || opcode.equals("monitor") ||
+				((opcode.startsWith("if") || opcode.startsWith("dow") || opcode.startsWith("dou")) &&
+						comparison(opcode) != null) ||
+				isCase(opcode);
+	}
+
+	private static boolean isCase(String opcode) {
+		return opcode.equals("cas") || (opcode.startsWith("cas") && opcode.length() == 5);
+	}
+
+	private static boolean closes(String opcode) {
+		return opcode.equals("end") || opcode.equals("endif") || opcode.equals("enddo") ||
+				opcode.equals("endsl") || opcode.equals("endfor") || opcode.equals("endsr") ||
+				opcode.equals("endcs") || opcode.equals("endmon");
+	}
+
+	private static boolean isMiddle(String opcode) {
+		return opcode.equals("else") || opcode.equals("elseif") || opcode.equals("other") ||
+				opcode.equals("when") || (opcode.startsWith("when") && comparison(opcode) != null) ||
+				opcode.equals("on-error");
+	}
+
+	private String indent() {
+		return indent(open.size());
+	}
+
+	private static String indent(int depth) {
+		if (depth < 0) {
+			return INDENT;
+		}
+		// two more columns for each nesting depth, from FreeFormEmitter's blanks
+		return FreeFormEmitter.indent(FreeFormEmitter.DECLARE + 2 * depth);
+	}
+
+	// ==========================================================
+	// helpers
+
+	private static boolean isExtFactor2(String opcode) {
+		return opcode.equals("eval") || opcode.equals("evalr") || opcode.equals("eval-corr") ||
+				opcode.equals("if") || opcode.equals("elseif") || opcode.equals("dow") ||
+				opcode.equals("dou") || opcode.equals("when") || opcode.equals("callp") ||
+				opcode.equals("return");
+	}
+
+	/**
+	 * The free-form operator for an xx comparison opcode (IFEQ, ANDGT...)
+	 * @return operator String, or null if the opcode isn't a comparison
+	 */
+	private static String comparison(String opcode) {
+		if (opcode.length() < 4) {
+			return null;
+		}
+		String base = opcode.substring(0, opcode.length() - 2);
+		if (!base.equals("if") && !base.equals("dow") && !base.equals("dou") &&
+				!base.equals("when") && !base.equals("and") && !base.equals("or") &&
+				!base.equals("cas")) {
+			return null;
+		}
+		switch (opcode.substring(opcode.length() - 2)) {
+			case "eq": return "=";
+			case "ne": return "<>";
+			case "gt": return ">";
+			case "lt": return "<";
+			case "ge": return ">=";
+			case "le": return "<=";
+			default: return null;
+		}
+	}
+
+	/**
+	 * Free-form name for an indicator
+	 * @param indicator String - lower case, from the indicator columns
+	 * @return *INxx, or null for the cycle indicators (L1-L9, MR, 1P...)
+	 */
+	static String indicatorName(String indicator) {
+		if (indicator.length() != 2) {
+			return null;
+		}
+		char c0 = indicator.charAt(0);
+		char c1 = indicator.charAt(1);
+		boolean valid = (c0 >= '0' && c0 <= '9' && c1 >= '0' && c1 <= '9' && !indicator.equals("00")) ||
+				indicator.equals("lr") ||
+				(c0 == 'k' && c1 >= 'a' && c1 <= 'y') ||
+				(c0 == 'h' && c1 >= '1' && c1 <= '9') ||
+				(c0 == 'u' && c1 >= '1' && c1 <= '8') ||
+				(c0 == 'o' && (c1 == 'f' || c1 == 'v' || (c1 >= 'a' && c1 <= 'g')));
+		return valid ? "*in" + indicator : null;
+	}
+
+	private boolean noFactors() {
+		if (factor1.length() != 0 || factor2.length() != 0 || result.length() != 0) {
+			unusable = "Factors with " + opcode;
+			return false;
+		}
+		return true;
+	}
+
+	// text, or null with a reason if there isn't any
+	private String require(String text) {
+		if (text.length() == 0) {
+			unusable = "Missing factor with " + opcode;
+			return null;
+		}
+		return text;
+	}
+
+	private static int quotes(CharSequence text) {
+		int count = 0;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\'') {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @param factor String
+	 * @return length of a character literal ('' counts once), or -1 if not one
+	 */
+	static int literalLength(String factor) {
+		int length = factor.length();
+		if (length < 2 || factor.charAt(0) != '\'' || factor.charAt(length - 1) != '\'') {
+			return -1;
+		}
+		int count = 0;
+		for (int i = 1; i < length - 1; i++) {
+			if (factor.charAt(i) == '\'') {
+				if (i + 1 >= length - 1 || factor.charAt(i + 1) != '\'') {
+					return -1;
+				}
+				i++;
+			}
+			count++;
+		}
+		return count;
+	}
+
+	private boolean isKeyList(String name) {
+		namesFrom.gatherNamesOnce();
+		return namesFrom.keyLists.contains(name.toUpperCase());
+	}
+
+	// length of a fixed-length character field, or -1 if that's not what it is
+	private int charLength(String name) {
+		namesFrom.gatherNamesOnce();
+		Integer length = namesFrom.charFields.get(name.toUpperCase());
+		return length == null ? -1 : length;
+	}
+
+	// converters working on pieces of one member, on different threads, 
+	// share one set of names
+	private synchronized void gatherNamesOnce() {
+		if (keyLists == null) {
+			gatherNames();
+		}
+	}
+
+	/**
+	 * One pass over the member for the names the calculations need to
+	 * know about: key lists, and the fixed-length character fields the
+	 * D-specs define.  Every name a D-spec defines is recorded, as -1 if
+	 * it's anything else; a name defined more than once (a local field
+	 * hiding a global one) is -1 whatever it is, since which one a
+	 * calculation means depends on the procedure it's in.
+	 */
+	private void gatherNames() {
+		keyLists = new HashSet<String>();
+		charFields = new HashMap<String, Integer>();
+		ContinuationIndex names = new ContinuationIndex(converter, member, 1);
+		SpecColumns d = new SpecColumns();
+		boolean inPrototype = false;
+		// the character field just defined; its keywords may go on over the next lines
+		String keywordsFor = null;
+
+		int elements = member.elements();
+		for (int e = 1; e <= elements; e++) {
+			byte code = code(e);
+			if (LineClassifier.isData(code) || (code & LineClassifier.KIND) == LineClassifier.TABLE) {
+				break;
+			}
+			if (LineClassifier.isComment(code) || LineClassifier.isContinued(code)) {
+				continue;
+			}
+			char spec = LineClassifier.spec(code);
+			if (spec == 'c') {
+				keywordsFor = null;
+				d.reset(member.elementChars(e));
+				if (d.lower(SpecColumns.OPCODE, SpecColumns.OPCODE_END).equals("klist")) {
+					keyLists.add(d.trimmed(SpecColumns.FACTOR1, SpecColumns.FACTOR1_END).toUpperCase());
+				}
+				continue;
+			}
+			if (spec != 'd') {
+				keywordsFor = null;
+				continue;
+			}
+
+			d.reset(member.elementChars(e));
+			String name = names.nameAt(e).toUpperCase();
+			if (name.isEmpty()) {
+				// nothing but keywords: more for the definition above
+				if (!d.isDefTypeBlank() || !d.isBlank(SpecColumns.FROM, SpecColumns.DECIMALS_END)) {
+					keywordsFor = null;
+				} else if (keywordsFor != null && !isFixedLength(d.keywords())) {
+					charFields.put(keywordsFor, -1);
+				}
+				continue;
+			}
+			keywordsFor = null;
+			if (!d.isDefTypeBlank()) {
+				// a procedure's name isn't a field, nor are a prototype's parameters
+				inPrototype = d.isDefType("pr");
+				if (inPrototype || d.isDefType("pi")) {
+					continue;
+				}
+			} else if (inPrototype) {
+				continue;
+			}
+
+			// fixed-length character: a standalone or subfield of type a
+			// (or blank with no decimals), a length, and nothing that makes
+			// it something else
+			int length = -1;
+			char dataType = d.dataType();
+			int len = d.len();
+			int from = d.fromPos();
+			if ((d.isDefTypeBlank() || d.isDefType("s")) &&
+					(dataType == 'a' || (dataType == ' ' && d.decimals() == SpecColumns.NONE)) &&
+					len >= 1 && from != SpecColumns.INVALID && isFixedLength(d.keywords())) {
+				length = from == SpecColumns.NONE ? len : len - from + 1;
+			}
+			if (charFields.put(name, length) != null) {
+				charFields.put(name, -1);
+			} else if (length > 0) {
+				keywordsFor = name;
+			}
+		}
+	}
+
+	// nothing in the keywords that makes a character field something else
+	private static boolean isFixedLength(String keywords) {
+		return !keywords.contains("varying") && !keywords.contains("like") &&
+				!keywords.contains("dim(") && !keywords.contains("varchar");
+	}
+
+}
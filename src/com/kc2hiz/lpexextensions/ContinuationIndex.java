@@ -0,0 +1,150 @@
+package com.kc2hiz.lpexextensions;
+
+import java.util.Arrays;
+
+/**
+ * Long names, assembled once per conversion
+ * <p>A name longer than 15 characters is written across several D- or P-spec
+ * lines, each ending in ... , with the spec line itself carrying the last
+ * piece.  Instead of every DSpec walking backward through the member to
+ * find the start of its name, this index walks forward once, carrying the
+ * pieces along, and remembers the assembled name for each element.
+ * <p>The index starts at the beginning of the continuation run ahead of the
+ * first element asked for, and is filled in lazily as later elements are
+ * asked for, so converting one structure only reads that structure.
+ * @author buck
+ *
+ */
+public class ContinuationIndex {
+
+	private final FixedToFreeConverter converter;
+	private final SourceMember member;
+
+	// assembled name for each element from start on; grows as needed
+	private String[] names = new String[64];
+	// first element resolved
+	private int start = 1;
+	// last element resolved
+	private int resolvedTo = 0;
+	// name pieces from ... lines not yet claimed by a spec line
+	private final StringBuilder pending = new StringBuilder();
+
+	/**
+	 * @param converter FixedToFreeConverter - supplies the column rules
+	 * @param member SourceMember - the member we're working on
+	 * @param from int - the first element that will be asked for
+	 */
+	public ContinuationIndex(FixedToFreeConverter converter, SourceMember member, int from) {
+		this.converter = converter;
+		this.member = member;
+		restart(from);
+	}
+
+	/**
+	 * @return start int - first line of the continuation run ahead of the 
+	 * earliest element asked for; nothing before it can change a name
+	 */
+	int start() {
+		return start;
+	}
+
+	/**
+	 * @return member SourceMember - the member this index is over
+	 */
+	public SourceMember member() {
+		return member;
+	}
+
+	/**
+	 * Get the full name for the spec on an element, including any pieces
+	 * continued from the lines before it
+	 * @param element int 1-based element number
+	 * @return name String
+	 */
+	public String nameAt(int element) {
+		if (element < start) {
+			restart(element);
+		}
+		if (element - start >= names.length) {
+			names = Arrays.copyOf(names, Math.max(names.length * 2, element - start + 1));
+		}
+		if (resolvedTo < element) {
+			Object event = ConversionStats.begin();
+			int from = resolvedTo + 1;
+			while (resolvedTo < element) {
+				resolvedTo++;
+				names[resolvedTo - start] = resolve(member.elementText(resolvedTo));
+			}
+			ConversionStats.end(event, ConversionStats.CONTINUATION, from, element - from + 1);
+		}
+		return names[element - start];
+	}
+
+	// back up to the first line of any continuation run that feeds 'from'
+	private void restart(int from) {
+		int j = from - 1;
+		while (j >= 1 && continues(member.elementText(j))) {
+			j--;
+		}
+		start = j + 1;
+		resolvedTo = j;
+		pending.setLength(0);
+		Arrays.fill(names, null);
+	}
+
+	/**
+	 * Can this line be part of a long name that finishes further down?
+	 * Comments and short lines are stepped over; a D- or P-spec with no name
+	 * and no definition type doesn't interrupt the name either.
+	 */
+	private boolean continues(String sourceStmt) {
+		if (converter.isComment(sourceStmt) || sourceStmt.length() <= 6) {
+			return true;
+		}
+		if (sourceStmt.endsWith("...")) {
+			return true;
+		}
+		return isBlankDefinition(sourceStmt);
+	}
+
+	private boolean isBlankDefinition(String sourceStmt) {
+		String spec = converter.getSpecFromTextNaive(sourceStmt);
+		return (spec.equals("d") || spec.equals("p")) &&
+				sourceStmt.length() <= 23 &&
+				sourceStmt.substring(6).trim().length() == 0;
+	}
+
+	// work out the name for one line and carry any continuation forward
+	private String resolve(String sourceStmt) {
+		// line too short to hold a name
+		if (sourceStmt.length() < 6) {
+			return "";
+		}
+
+		int i = 21;
+		if (sourceStmt.length() <= i) {
+			i = sourceStmt.length();
+		}
+		String name = sourceStmt.substring(6, i).trim();
+		if (pending.length() != 0) {
+			name = pending.toString() + name;
+		}
+
+		// comments, short lines and empty definitions leave the pieces alone
+		if (converter.isComment(sourceStmt) || sourceStmt.length() <= 6 ||
+				isBlankDefinition(sourceStmt)) {
+			return name;
+		}
+		
+		// is the name continued?
+		if (sourceStmt.endsWith("...")) {
+			pending.append(sourceStmt.substring(6, sourceStmt.length() - 3).trim());
+			return name;
+		}
+
+		// a spec line finishes the name
+		pending.setLength(0);
+		return name;
+	}
+
+}
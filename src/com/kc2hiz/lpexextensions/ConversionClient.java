@@ -0,0 +1,159 @@
+package com.kc2hiz.lpexextensions;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Thin client for ConversionServer
+ * <p>Sends each member to the server on one connection and writes the
+ * converted member, as it comes back, to the same file name under the
+ * output directory.  Nothing is converted here, so the client starts fast.
+ * <pre>
+ * java com.kc2hiz.lpexextensions.ConversionClient [-p port] outputDir member...
+ * java com.kc2hiz.lpexextensions.ConversionClient [-p port] -stop
+ * </pre>
+ * -stop only works for the user who started the server: it sends the token
+ * the server left in that user's home directory.
+ * @author buck
+ * @version 01.00.00 Initial
+ * @version 01.00.01 STOP sends the server's token
+ *
+ */
+public class ConversionClient implements AutoCloseable {
+
+	private final Socket socket;
+	private final BufferedReader in;
+	private final BufferedWriter out;
+
+	/**
+	 * @param port int - the port the server listens on, on the loopback address
+	 * @throws IOException if there's no server there
+	 */
+	public ConversionClient(int port) throws IOException {
+		socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		in = new BufferedReader(new InputStreamReader(socket.getInputStream(), BatchConvert.CHARSET));
+		out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), BatchConvert.CHARSET));
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = ConversionServer.DEFAULT_PORT;
+		int a = 0;
+		if (args.length > a + 1 && args[a].equals("-p")) {
+			port = Integer.parseInt(args[a + 1]);
+			a += 2;
+		}
+		if (args.length == a + 1 && args[a].equals("-stop")) {
+			String token;
+			try {
+				token = new String(Files.readAllBytes(ConversionServer.tokenFile(port)), StandardCharsets.US_ASCII).trim();
+			} catch (NoSuchFileException e) {
+				System.err.println("no token in " + ConversionServer.tokenFile(port) + "; is the server yours?");
+				System.exit(2);
+				return;
+			}
+			try (ConversionClient client = new ConversionClient(port)) {
+				System.out.println(client.request("STOP " + token));
+			}
+			return;
+		}
+		if (args.length < a + 2) {
+			System.err.println("usage: ConversionClient [-p port] outputDir member...");
+			System.err.println("       ConversionClient [-p port] -stop");
+			System.exit(2);
+		}
+
+		Path outputDir = Paths.get(args[a++]);
+		Files.createDirectories(outputDir);
+		int failures = 0;
+		try (ConversionClient client = new ConversionClient(port)) {
+			for (; a < args.length; a++) {
+				Path source = Paths.get(args[a]);
+				Path target = outputDir.resolve(source.getFileName());
+				String reply;
+				try {
+					reply = client.convert(Files.readAllLines(source, BatchConvert.CHARSET), source.getFileName().toString(), target);
+				} catch (NoSuchFileException e) {
+					reply = "ERROR not found";
+				}
+				System.out.println(source + ": " + reply);
+				if (!reply.startsWith("OK")) {
+					failures++;
+				}
+			}
+		}
+		if (failures != 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Convert one member
+	 * @param text List - the lines of the member
+	 * @param name String - the member's name, for error messages
+	 * @param target Path - where the converted member goes
+	 * @return reply String - the server's OK or ERROR line
+	 * @throws IOException if the target can't be written or the server goes away
+	 */
+	public String convert(List<String> text, String name, Path target) throws IOException {
+		out.write("MEMBER " + text.size() + " " + name + "\n");
+		for (String line : text) {
+			out.write(line);
+			out.write('\n');
+		}
+		out.flush();
+
+		String reply = readReply();
+		if (!reply.startsWith("OK ")) {
+			return reply;
+		}
+		int lines = Integer.parseInt(reply.substring(reply.lastIndexOf(' ') + 1));
+		try (BufferedWriter converted = Files.newBufferedWriter(target, BatchConvert.CHARSET)) {
+			for (int i = 0; i < lines; i++) {
+				String line = in.readLine();
+				if (line == null) {
+					throw new IOException("server went away in the middle of " + name);
+				}
+				converted.write(line);
+				converted.write('\n');
+			}
+		}
+		return reply;
+	}
+
+	/**
+	 * Send a one line request: STATS or STOP
+	 * @param request String
+	 * @return reply String - the server's OK or ERROR line
+	 * @throws IOException if the server goes away
+	 */
+	public String request(String request) throws IOException {
+		out.write(request + "\n");
+		out.flush();
+		return readReply();
+	}
+
+	private String readReply() throws IOException {
+		String reply = in.readLine();
+		if (reply == null) {
+			throw new IOException("server closed the connection");
+		}
+		return reply;
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+
+}
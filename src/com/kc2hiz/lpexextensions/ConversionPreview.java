@@ -0,0 +1,287 @@
+package com.kc2hiz.lpexextensions;
+
+import com.ibm.lpex.core.LpexCursorListener;
+import com.ibm.lpex.core.LpexDocumentListener;
+import com.ibm.lpex.core.LpexView;
+import com.ibm.lpex.core.LpexViewAdapter;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Works out the fixed-to-free conversion for the structure under the cursor
+ * in the background, so running the action only has to insert the lines
+ * <p>When the cursor lands on an H-, F-, D- or P-spec, the lines the conversion 
+ * reads are copied into an immutable snapshot: back to the start of a long 
+ * name, and on through the subfields or continuation lines.  Only those lines 
+ * are read on the UI thread, however big the member.  The conversion runs on
+ * a worker thread, and the result is kept with the document generation it
+ * was worked out from; any edit makes it stale.
+ * <p>C-specs aren't previewed.  Their conversion looks up key lists and field
+ * lengths anywhere in the member, so it needs all of it; the action converts
+ * them straight from the view.
+ * <p>The worker never touches the LpexView; everything it reads is in the snapshot.
+ * @author buck
+ *
+ */
+public class ConversionPreview extends LpexViewAdapter implements LpexCursorListener, LpexDocumentListener {
+
+	// one preview per view
+	private static final Map<LpexView, ConversionPreview> previews = new WeakHashMap<LpexView, ConversionPreview>();
+
+	// all views share one low priority worker
+	private static final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "lpexextensions conversion preview");
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		return t;
+	});
+
+	// only used on the UI thread
+	private final FixedToFreeConverter classifier = new FixedToFreeConverter();
+	private final SpecColumns cols = new SpecColumns();
+	private Future<?> pending = null;
+
+	// bumped on every document change
+	private volatile long generation = 0;
+	// latest finished conversion
+	private volatile Result result = null;
+
+	/**
+	 * A finished conversion and what it was worked out from
+	 */
+	static class Result {
+		final long generation;
+		final int element;
+		final ConvertedBlock block;
+
+		Result(long generation, int element, ConvertedBlock block) {
+			this.generation = generation;
+			this.element = element;
+			this.block = block;
+		}
+	}
+
+	private ConversionPreview() {
+	}
+
+	/**
+	 * Start previewing conversions for a view.  Safe to call more than once.
+	 * <p>Nothing is installed when a view opens; the convert and preview 
+	 * actions call this the first time they run in a view, so views that 
+	 * are never converted don't pay for the listeners.
+	 * @param view LpexView
+	 * @return preview ConversionPreview - the view's one preview
+	 */
+	public static ConversionPreview install(LpexView view) {
+		synchronized (previews) {
+			ConversionPreview preview = previews.get(view);
+			if (preview != null) {
+				return preview;
+			}
+			preview = new ConversionPreview();
+			previews.put(view, preview);
+			view.addLpexViewListener(preview);
+			view.addLpexCursorListener(preview);
+			view.addLpexDocumentListener(preview);
+			return preview;
+		}
+	}
+
+	/**
+	 * @param view LpexView
+	 * @return true if install() has been called for the view
+	 */
+	public static boolean installed(LpexView view) {
+		synchronized (previews) {
+			return previews.containsKey(view);
+		}
+	}
+
+	/**
+	 * Install if need be, and start on the conversion for the cursor line
+	 * without waiting for the cursor to move
+	 * @param view LpexView
+	 */
+	public static void request(LpexView view) {
+		install(view).elementChanged(view);
+	}
+
+	/**
+	 * Get the conversion for an element if it has been worked out already
+	 * and the document hasn't changed since
+	 * @param view LpexView
+	 * @param element int - element the conversion has to start on
+	 * @return block ConvertedBlock - or null if there isn't one ready
+	 */
+	public static ConvertedBlock ready(LpexView view, int element) {
+		ConversionPreview preview;
+		synchronized (previews) {
+			preview = previews.get(view);
+		}
+		if (preview == null) {
+			return null;
+		}
+		Result r = preview.result;
+		if (r == null || r.generation != preview.generation || r.element != element) {
+			return null;
+		}
+		return r.block;
+	}
+
+	// ==========================================================
+	// listeners
+
+	/**
+	 * The cursor moved to another element; start on the conversion for it
+	 * @see com.ibm.lpex.core.LpexCursorListener#elementChanged(com.ibm.lpex.core.LpexView)
+	 */
+	@Override
+	public void elementChanged(LpexView view) {
+		int element = view.currentElement();
+		if (element <= 0) {
+			return;
+		}
+
+		// already done, or nothing we know how to convert
+		if (ready(view, element) != null || !isConvertible(view.elementText(element))) {
+			return;
+		}
+
+		if (pending != null) {
+			pending.cancel(false);
+		}
+		
+		// take a copy of the lines it needs; the worker can't read the view
+		final SourceMember member = takeSnapshot(view, element);
+		final long gen = generation;
+		pending = worker.submit(() -> {
+			// beaten to it by an edit
+			if (gen != generation) {
+				return;
+			}
+			ConvertedBlock block = new FixedToFreeConverter().getStructureAsFree(member, element);
+			if (block != null) {
+				result = new Result(gen, element, block);
+			}
+		});
+	}
+
+	/**
+	 * Any change to the text makes the snapshot and the result stale
+	 * @see com.ibm.lpex.core.LpexDocumentListener#documentChanged(com.ibm.lpex.core.LpexView, int, int, int)
+	 */
+	@Override
+	public void documentChanged(LpexView view, int type, int element, int parm) {
+		generation++;
+		result = null;
+	}
+
+	/**
+	 * Stop listening when the view goes away
+	 * @see com.ibm.lpex.core.LpexViewAdapter#disposed(com.ibm.lpex.core.LpexView)
+	 */
+	@Override
+	public void disposed(LpexView view) {
+		synchronized (previews) {
+			previews.remove(view);
+		}
+		if (pending != null) {
+			pending.cancel(false);
+		}
+		view.removeLpexCursorListener(this);
+		view.removeLpexDocumentListener(this);
+		view.removeLpexViewListener(this);
+	}
+
+	// ==========================================================
+
+	// only bother for lines that start a conversion: a subfield, parameter
+	// or continuation line never gets a block of its own
+	private boolean isConvertible(String sourceStmt) {
+		byte code = LineClassifier.classify(sourceStmt);
+		if (LineClassifier.isComment(code) || LineClassifier.isContinued(code)) {
+			return false;
+		}
+		cols.reset(sourceStmt);
+		switch (LineClassifier.spec(code)) {
+			case 'h':
+				return true;
+			case 'f':
+				return !cols.isFileContinuation();
+			case 'd':
+			case 'p':
+				return classifier.isStructureStart(cols);
+			default:
+				return false;
+		}
+	}
+
+	// copy the lines converting the spec on an element reads
+	private SourceMember takeSnapshot(LpexView view, int element) {
+		SourceMember member = new LpexSourceMember(view);
+		// the long name lines ahead, and the line above them that stopped the
+		// index backing up; the worker's index reads it and stops there too
+		int first = Math.max(1, new ContinuationIndex(classifier, member, element).start() - 1);
+		char spec = LineClassifier.spec(LineClassifier.classify(view.elementText(element)));
+
+		// subfields, parameters and F-spec continuations, and the comments and
+		// long name lines among them
+		int last = element;
+		int elements = view.elements();
+		while (spec != 'h' && last < elements) {
+			String next = view.elementText(last + 1);
+			byte code = LineClassifier.classify(next);
+			// a long name can run into the definition type columns
+			if (!LineClassifier.isComment(code) && !LineClassifier.isContinued(code)) {
+				cols.reset(next);
+				boolean goesOn = spec == 'f' ?
+						LineClassifier.spec(code) == 'f' && cols.isFileContinuation() :
+						LineClassifier.spec(code) == 'd' && cols.isDefTypeBlank();
+				if (!goesOn) {
+					break;
+				}
+			}
+			last++;
+		}
+
+		String[] lines = new String[last - first + 1];
+		for (int e = first; e <= last; e++) {
+			lines[e - first] = view.elementText(e);
+		}
+		return new Window(elements, first, lines);
+	}
+
+	/**
+	 * Part of a member; every line outside it reads as empty.  The window
+	 * holds every line the conversion reads, so the lines outside it are
+	 * never looked at, except by the scan for compile time data, which an
+	 * empty line can't start.
+	 */
+	private static final class Window implements SourceMember {
+		private final int elements;
+		private final int first;
+		private final String[] lines;
+
+		Window(int elements, int first, String[] lines) {
+			this.elements = elements;
+			this.first = first;
+			this.lines = lines;
+		}
+
+		@Override
+		public int elements() {
+			return elements;
+		}
+
+		@Override
+		public String elementText(int element) {
+			int i = element - first;
+			return i >= 0 && i < lines.length ? lines[i] : "";
+		}
+	}
+
+}
@@ -0,0 +1,286 @@
+package com.kc2hiz.lpexextensions;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-running fixed-to-free conversion server for build pipelines
+ * <p>Starting a JVM for every member costs more than converting it.  This
+ * server stays up, so the converter classes stay loaded and the JIT stays
+ * warm, and ConversionClient sends it members over a loopback socket.
+ * Only the loopback address is listened on, but that lets in every user of
+ * the machine, so STOP has to quote a token.  The server makes a new one
+ * each time it starts and writes it to a file in the home directory of the
+ * user who started it, readable by that user only.
+ * <p>The protocol is lines of text, in the same single byte code page as
+ * BatchConvert.  Any number of requests can go over one connection:
+ * <pre>
+ * MEMBER lines name      followed by that many source lines, at most MAX_LINES
+ *   OK blocks lines      followed by that many converted lines
+ *   ERROR message        and if the line count is bad, the connection is closed
+ * STATS
+ *   OK summary           ConversionStats.summary()
+ * STOP token             stop the server; the token is in tokenFile(port)
+ * </pre>
+ * The converted member is what BatchConvert writes: the fixed-form lines
+ * with the free-form lines added after each structure.
+ * <pre>
+ * java com.kc2hiz.lpexextensions.ConversionServer [port]
+ * </pre>
+ * @author buck
+ * @version 01.00.00 Initial
+ * @version 01.00.01 Limit the line count; STOP needs the token
+ *
+ */
+public class ConversionServer {
+
+	static final int DEFAULT_PORT = 7391;
+	// SRCSEQ zoned(6,2) numbers no more records than this
+	static final int MAX_LINES = 999999;
+
+	private final ServerSocket server;
+	// what STOP has to quote, and where the user who started the server can read it
+	private final String token;
+	private final Path tokenFile;
+	private final ExecutorService connections = Executors.newCachedThreadPool();
+	private volatile boolean stopping = false;
+
+	/**
+	 * @param port int - loopback port to listen on; 0 for any free port
+	 * @throws IOException if the port can't be had
+	 */
+	public ConversionServer(int port) throws IOException {
+		server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		byte[] random = new byte[16];
+		new SecureRandom().nextBytes(random);
+		StringBuilder hex = new StringBuilder();
+		for (byte b : random) {
+			hex.append(String.format("%02x", b));
+		}
+		token = hex.toString();
+		try {
+			tokenFile = writeToken(port(), token);
+		} catch (IOException e) {
+			server.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Where the STOP token for a server is kept
+	 * @param port int - the port the server listens on
+	 * @return path Path - in the user's home directory
+	 */
+	static Path tokenFile(int port) {
+		return Paths.get(System.getProperty("user.home"), ".lpexextensions", "server-" + port + ".token");
+	}
+
+	// a new file each time, so it's made with the owner-only permissions
+	private static Path writeToken(int port, String token) throws IOException {
+		Path file = tokenFile(port);
+		Files.createDirectories(file.getParent());
+		Files.deleteIfExists(file);
+		try {
+			Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException e) {
+			// not POSIX (Windows): the file is as private as the user's profile
+			Files.createFile(file);
+		}
+		Files.write(file, token.getBytes(StandardCharsets.US_ASCII));
+		file.toFile().deleteOnExit();
+		return file;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		ConversionServer conversionServer = new ConversionServer(port);
+		System.out.println("Converting on " + conversionServer.server.getLocalSocketAddress());
+		conversionServer.run();
+	}
+
+	/**
+	 * @return port int - the port being listened on
+	 */
+	public int port() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Accept connections until stopped; each one gets its own thread
+	 * @throws IOException if accepting fails other than by stop()
+	 */
+	public void run() throws IOException {
+		try {
+			while (!stopping) {
+				final Socket socket;
+				try {
+					socket = server.accept();
+				} catch (IOException e) {
+					if (stopping) {
+						break;
+					}
+					throw e;
+				}
+				connections.execute(() -> serve(socket));
+			}
+		} finally {
+			connections.shutdown();
+		}
+	}
+
+	/**
+	 * Stop accepting connections.  Requests already being converted finish.
+	 */
+	public void stop() {
+		stopping = true;
+		try {
+			server.close();
+			Files.deleteIfExists(tokenFile);
+		} catch (IOException e) {
+			// closing anyway
+		}
+	}
+
+	// one connection: requests until the client hangs up
+	private void serve(Socket socket) {
+		try (Socket s = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), BatchConvert.CHARSET));
+				BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), BatchConvert.CHARSET))) {
+			FixedToFreeConverter converter = new FixedToFreeConverter();
+			String request;
+			while ((request = in.readLine()) != null) {
+				if (request.startsWith("MEMBER ")) {
+					if (!convert(converter, request, in, out)) {
+						out.flush();
+						return;
+					}
+				} else if (request.equals("STATS")) {
+					out.write("OK " + ConversionStats.summary() + "\n");
+				} else if (request.equals("STOP") || request.startsWith("STOP ")) {
+					if (!isToken(request.substring(4).trim())) {
+						out.write("ERROR STOP needs the token in " + tokenFile + "\n");
+					} else {
+						out.write("OK stopping\n");
+						out.flush();
+						stop();
+						return;
+					}
+				} else {
+					out.write("ERROR unknown request: " + request + "\n");
+				}
+				out.flush();
+			}
+		} catch (IOException e) {
+			// the client went away; nothing to tell it
+		}
+	}
+
+	// compared in constant time, so the reply time says nothing about the token
+	private boolean isToken(String quoted) {
+		return MessageDigest.isEqual(quoted.getBytes(StandardCharsets.US_ASCII), token.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	// MEMBER lines name, then the lines
+	// false if the line count is no good; the lines after it can't be told from requests then
+	private boolean convert(FixedToFreeConverter converter, String request, BufferedReader in, Writer out) throws IOException {
+		String[] words = request.split(" ", 3);
+		int count;
+		try {
+			count = Integer.parseInt(words[1]);
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			count = -1;
+		}
+		if (count < 0 || count > MAX_LINES) {
+			out.write("ERROR bad line count, 0 to " + MAX_LINES + ": " + request + "\n");
+			return false;
+		}
+
+		// grown as the lines come, not sized on the client's say-so
+		ArrayList<String> text = new ArrayList<String>(Math.min(count, 1024));
+		for (int i = 0; i < count; i++) {
+			String line = in.readLine();
+			if (line == null) {
+				throw new IOException("member ended early");
+			}
+			text.add(line);
+		}
+
+		SourceMember member = new ArraySourceMember(text);
+		StringBuilderWriter converted = new StringBuilderWriter();
+		try {
+			int blocks = count >= BatchConvert.SPLIT_LINES ?
+					converter.writeMemberAsFree(member, new ParallelMemberConverter(converter).getMemberAsFree(member), converted) :
+					converter.writeMemberAsFree(member, converted);
+			out.write("OK " + blocks + " " + converted.lines + "\n");
+			out.append(converted.text);
+		} catch (RuntimeException e) {
+			out.write("ERROR " + (words.length > 2 ? words[2] : "member") + ": " + e + "\n");
+		}
+		return true;
+	}
+
+	// collects a converted member, counting its lines, so the reply can say how many come
+	private static class StringBuilderWriter extends Writer {
+		final StringBuilder text = new StringBuilder();
+		int lines = 0;
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			text.append(cbuf, off, len);
+			for (int i = off; i < off + len; i++) {
+				if (cbuf[i] == '\n') {
+					lines++;
+				}
+			}
+		}
+
+		@Override
+		public void write(int c) {
+			text.append((char) c);
+			if (c == '\n') {
+				lines++;
+			}
+		}
+
+		@Override
+		public void write(String str) {
+			write(str, 0, str.length());
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			text.append(str, off, off + len);
+			for (int i = off; i < off + len; i++) {
+				if (str.charAt(i) == '\n') {
+					lines++;
+				}
+			}
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+}
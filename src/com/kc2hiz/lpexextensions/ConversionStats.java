@@ -0,0 +1,148 @@
+package com.kc2hiz.lpexextensions;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the time goes in a conversion, and how much has been converted
+ * <p>Each phase is bracketed with begin() and end().  When a Flight Recorder
+ * recording is running these turn into ConversionEvents carrying the phase,
+ * element and line count; the rest of the time begin() returns null and
+ * end() does nothing, so the hot path doesn't allocate.
+ * <pre>
+ * Object event = ConversionStats.begin();
+ * ... work ...
+ * ConversionStats.end(event, ConversionStats.CLASSIFY, 1, lines);
+ * </pre>
+ * <p>The events are in the optional com.kc2hiz.lpexextensions.jfr fragment.
+ * jdk.jfr needs Java 11 to compile against, and the plug-in itself targets
+ * Java 8, so nothing here refers to ConversionEvent by name: it is looked up
+ * once, and without the fragment (or on a JVM without Flight Recorder) 
+ * there are no events and nothing else changes.
+ * <p>The counters run for the life of the JVM, across every view, and can
+ * be shown in the editor with the conversionStatsAction.
+ * @author buck
+ *
+ */
+public final class ConversionStats {
+
+	// phases, as they show up in the recording
+	public static final String CLASSIFY = "classify";
+	public static final String PARSE_H = "HSpec";
+	public static final String PARSE_F = "FSpec";
+	public static final String PARSE_D = "DSpec";
+	public static final String PARSE_C = "CSpec";
+	public static final String CONTINUATION = "continuation";
+	public static final String DATA_TYPE = "dataType";
+	public static final String INSERT = "insert";
+	public static final String REPARSE = "reparse";
+
+	// the fragment's recorder; null without it or without Flight Recorder
+	private static final Recorder JFR = recorder();
+
+	private static final LongAdder specsConverted = new LongAdder();
+	private static final LongAdder linesConverted = new LongAdder();
+	private static final LongAdder specsRejected = new LongAdder();
+
+	private ConversionStats() {
+	}
+
+	/**
+	 * What the jfr fragment implements
+	 */
+	interface Recorder {
+		/**
+		 * @return true if this JVM can record events at all
+		 */
+		boolean available();
+
+		/**
+		 * @return a started event, or null if no recording wants it
+		 */
+		Object start();
+
+		/**
+		 * Fill in and commit an event from start()
+		 */
+		void finish(Object started, String phase, int element, int lines);
+	}
+
+	// the fragment's classes are on the bundle's class path when it's installed
+	private static Recorder recorder() {
+		try {
+			Class<?> recording = Class.forName("com.kc2hiz.lpexextensions.ConversionEvent$Recording");
+			Recorder recorder = (Recorder) recording.getDeclaredConstructor().newInstance();
+			return recorder.available() ? recorder : null;
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Start timing a phase
+	 * @return event Object - pass to end(); null if nothing is recording
+	 */
+	public static Object begin() {
+		return JFR != null ? JFR.start() : null;
+	}
+
+	/**
+	 * Finish timing a phase
+	 * @param event Object - from begin()
+	 * @param phase String - one of the phase names above
+	 * @param element int - first element the phase worked on
+	 * @param lines int - how many lines it worked on
+	 */
+	public static void end(Object event, String phase, int element, int lines) {
+		if (event != null) {
+			JFR.finish(event, phase, element, lines);
+		}
+	}
+
+	/**
+	 * Count converted specs written back to a member
+	 * @param specs int - specs or structures converted
+	 * @param lines int - free-form lines written
+	 */
+	public static void converted(int specs, int lines) {
+		specsConverted.add(specs);
+		linesConverted.add(lines);
+	}
+
+	/**
+	 * Count a spec that couldn't be converted, e.g. in the middle of a structure
+	 */
+	public static void rejected() {
+		specsRejected.increment();
+	}
+
+	public static long specsConverted() {
+		return specsConverted.sum();
+	}
+
+	public static long linesConverted() {
+		return linesConverted.sum();
+	}
+
+	public static long specsRejected() {
+		return specsRejected.sum();
+	}
+
+	/**
+	 * Start counting again
+	 */
+	public static void reset() {
+		specsConverted.reset();
+		linesConverted.reset();
+		specsRejected.reset();
+	}
+
+	/**
+	 * @return summary String - the counters, for a message line
+	 */
+	public static String summary() {
+		return "Converted " + specsConverted() + " specs to " + linesConverted() +
+				" lines; rejected " + specsRejected() +
+				(JFR != null ? "" : " (no Flight Recorder events)");
+	}
+
+}
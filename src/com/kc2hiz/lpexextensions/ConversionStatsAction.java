@@ -0,0 +1,29 @@
+package com.kc2hiz.lpexextensions;
+
+import com.ibm.lpex.core.LpexAction;
+import com.ibm.lpex.core.LpexView;
+
+/**
+ * Show how much has been converted, and how much refused, in the message line
+ * <p>for use as an Lpex User Action.
+ * @author buck
+ * @version 01.00.00 Initial, out of UserProfile
+ *
+ */
+public class ConversionStatsAction implements LpexAction {
+
+	public ConversionStatsAction() {
+		// empty constructor
+	}
+
+	@Override
+	public void doAction(LpexView view) {
+		view.doCommand("set messageText " + ConversionStats.summary());
+	}
+
+	@Override
+	public boolean available(LpexView view) {
+		return true;
+	}
+
+}
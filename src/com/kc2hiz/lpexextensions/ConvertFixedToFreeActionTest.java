@@ -119,4 +119,18 @@ public class ConvertFixedToFreeActionTest {
 		assertEquals("5 int", "int(5)", c.getDataTypeKeyword("", "5", "i", "0", ""));
 	}
 
+	@Test
+	public void testOriginalAsComment() {
+		String narrow = "     D custNo          S              7P 0";
+		assertEquals("fits", "       //" + narrow, ConvertFixedToFreeAction.originalAsComment(narrow, 100));
+
+		// columns 1-100, with the right hand comment in 81-100
+		String full = "     D custName        S             40A   INZ(*BLANKS)                         customer name, upper";
+		assertEquals("full width", 100, full.length());
+		String copy = ConvertFixedToFreeAction.originalAsComment(full, 100);
+		assertEquals("within the record", 100, copy.length());
+		assertTrue("comment kept", copy.endsWith("customer name, upper"));
+		assertTrue("spec kept", copy.startsWith("       //     D custName        S"));
+	}
+
 }
@@ -0,0 +1,55 @@
+package com.kc2hiz.lpexextensions;
+
+import com.ibm.lpex.core.LpexView;
+
+import java.util.ArrayList;
+
+/**
+ * Convert every H-, F-, D-, P- and C-specification in the member to fully free
+ * <p>The whole member is read once, top to bottom.  Each structure is converted
+ * with the same logic as {@link ConvertFixedToFreeAction}; the generated lines
+ * are written after the structure they came from, leaving the fixed-form
+ * originals in place for review.
+ * <p>for use as an Lpex User Action.
+ * @author buck
+ * @version 01.00.00 Initial
+ * @version 01.00.01 Use the parser's element classes where it has them
+ *
+ */
+public class ConvertMemberToFreeAction extends ConvertFixedToFreeAction {
+
+	public ConvertMemberToFreeAction() {
+		// empty constructor
+	}
+
+	/**
+	 * Converts all the fixed specifications in the view to fully free
+	 * @param view LpexView to operate on
+	 * @see com.ibm.lpex.core.LpexAction#doAction(com.ibm.lpex.core.LpexView)
+	 */
+	@Override
+	public void doAction(LpexView view) {
+		int thisLine = view.currentElement();
+
+		// the parser has already sorted out the free form, blank and comment
+		// lines; take its word for those and only classify the rest from the text
+		SourceMember member = new LpexSourceMember(view);
+		byte[] classes = new ElementClasses(view).classify(member);
+
+		// single forward pass over the member.
+		// nothing is inserted yet, so the element numbers don't move under us
+		ArrayList<ConvertedBlock> blocks = getMemberAsFree(member, classes);
+
+		// write the blocks out from the bottom up so the element numbers
+		// we saved on the way down are still good
+		String applied = applyBlocks(view, blocks);
+
+		// put the cursor back where it was
+		view.doDefaultCommand("locate element " + thisLine);
+		view.doDefaultCommand("set position 1");
+		view.doCommand("set messageText Converted " + blocks.size() + " specs to free form. " + applied);
+		
+		return;
+	}
+
+}
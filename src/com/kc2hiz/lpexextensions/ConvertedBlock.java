@@ -0,0 +1,23 @@
+package com.kc2hiz.lpexextensions;
+
+import java.util.ArrayList;
+
+/**
+ * The free-form lines generated from one fixed-form spec or structure
+ * @author buck
+ *
+ */
+public class ConvertedBlock {
+	// element number of the first fixed-form line converted
+	public int firstElement = 0;
+	// element number of the last fixed-form line converted
+	public int lastElement = 0;
+	// the generated free-form lines
+	public ArrayList<String> lines = new ArrayList<String>();
+
+	public ConvertedBlock(int firstElement) {
+		this.firstElement = firstElement;
+		this.lastElement = firstElement;
+	}
+
+}
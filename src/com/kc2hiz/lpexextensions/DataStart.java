@@ -0,0 +1,63 @@
+package com.kc2hiz.lpexextensions;
+
+import com.ibm.lpex.core.LpexDocumentListener;
+import com.ibm.lpex.core.LpexView;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Where the compile time data starts in a view, found once
+ * <p>The convert and preview actions leave the ** table lines alone, and
+ * finding the marker means reading the lines above it.  That's done the
+ * first time it's asked for, and the answer is kept until the document
+ * changes at or above it; a change further down, in the data, can't move it.
+ * @author buck
+ *
+ */
+public class DataStart implements LpexDocumentListener {
+
+	private static final Map<LpexView, DataStart> starts = new WeakHashMap<LpexView, DataStart>();
+
+	// the ** marker line, 1 for **FREE, or elements + 1; 0 until worked out
+	private volatile int start = 0;
+
+	private DataStart() {
+	}
+
+	/**
+	 * Where the compile time data starts in a view
+	 * @param view LpexView
+	 * @return element int - the ** marker line, 1 if the member is **FREE,
+	 * or one past the last element if there's no data
+	 */
+	public static int forView(LpexView view) {
+		DataStart data;
+		synchronized (starts) {
+			data = starts.get(view);
+			if (data == null) {
+				data = new DataStart();
+				starts.put(view, data);
+				view.addLpexDocumentListener(data);
+			}
+		}
+		int start = data.start;
+		if (start == 0) {
+			start = LineClassifier.dataStart(new LpexSourceMember(view), view.elements());
+			data.start = start;
+		}
+		return start;
+	}
+
+	/**
+	 * A line at or above the marker changed; it may have moved, or a new one come in
+	 * @see com.ibm.lpex.core.LpexDocumentListener#documentChanged(com.ibm.lpex.core.LpexView, int, int, int)
+	 */
+	@Override
+	public void documentChanged(LpexView view, int type, int element, int parm) {
+		if (element <= start) {
+			start = 0;
+		}
+	}
+
+}
@@ -0,0 +1,149 @@
+package com.kc2hiz.lpexextensions;
+
+import java.util.Arrays;
+
+import com.ibm.lpex.core.LpexView;
+
+/**
+ * Snapshot of the parser's element classes for a whole view
+ * <p>The RPG parser has already worked out which lines are free form, blank
+ * or comments.  Asking for that one line at a time with query elementClasses
+ * builds a String of class names per line.  Here the class names are turned
+ * into bit masks once, and the class bits for every element are read into
+ * a long array, so each later check is an array lookup and an and.
+ * <p>The snapshot is only good until the document changes; take a new one
+ * for each conversion.  To check one line, make one with no snapshot: it
+ * resolves the masks and reads only the elements it's asked about.
+ * @author buck
+ *
+ */
+public class ElementClasses {
+
+	// parser class names, as getSpecFromView looked for them
+	static final String FREE = "Free";
+	static final String SPACE = "SPACE";
+	static final String COMMENT = "commentOnly";
+
+	// class masks; 0 if the parser doesn't define the class
+	private final long freeMask;
+	private final long spaceMask;
+	private final long commentMask;
+
+	// class bits per element, indexed by element number; [0] is unused.
+	// null with no snapshot, when each element is asked of the view
+	private final long[] classes;
+	private final LpexView view;
+
+	/**
+	 * Resolve the masks and read the class bits of every element
+	 * @param view LpexView - the view to take the snapshot of
+	 */
+	public ElementClasses(LpexView view) {
+		this(view, true);
+	}
+
+	/**
+	 * Resolve the masks, and read the class bits of every element or none
+	 * @param view LpexView - the view to take the snapshot of
+	 * @param snapshot boolean - false to read each element when it's asked about
+	 */
+	public ElementClasses(LpexView view, boolean snapshot) {
+		freeMask = view.classMask(FREE);
+		spaceMask = view.classMask(SPACE);
+		commentMask = view.classMask(COMMENT);
+
+		if (!snapshot) {
+			this.view = view;
+			classes = null;
+			return;
+		}
+		this.view = null;
+		int elements = view.elements();
+		classes = new long[elements + 1];
+		if (resolved()) {
+			for (int e = 1; e <= elements; e++) {
+				classes[e] = view.elementClasses(e);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the parser gave us any of the classes we look for.
+	 * No parser (or a different one) means every line has to be classified
+	 * from its text.
+	 */
+	public boolean resolved() {
+		return (freeMask | spaceMask | commentMask) != 0;
+	}
+
+	/**
+	 * @param element int - element number
+	 * @return bits long - the parser classes of the element
+	 */
+	public long classesAt(int element) {
+		if (classes == null) {
+			return resolved() ? view.elementClasses(element) : 0;
+		}
+		return classes[element];
+	}
+
+	/**
+	 * Same answer as getSpecFromView, for any element in the snapshot
+	 * @param element int - element number
+	 * @return spec String - ! for free form, blank for blank lines, * for comments, ? otherwise
+	 */
+	public String spec(int element) {
+		long bits = classesAt(element);
+		if ((bits & freeMask) != 0) {
+			return "!";
+		}
+		if ((bits & spaceMask) != 0) {
+			return " ";
+		}
+		if ((bits & commentMask) != 0) {
+			return "*";
+		}
+		return "?";
+	}
+
+	/**
+	 * Classify every line of the member, the way LineClassifier does, but
+	 * take the parser's word for free form, blank and comment lines.  Only
+	 * the rest have their text read.
+	 * <p>The parser also knows better than the column 6 check: a free-form
+	 * line indented to column 6 can start with a spec letter.
+	 * <p>Comment lines are read too, to find the ** that starts the compile
+	 * time data; it and everything after it is coded DATA.
+	 * @param member SourceMember - the member the snapshot was taken of
+	 * @return classes byte[] - indexed by element number; [0] is unused
+	 */
+	public byte[] classify(SourceMember member) {
+		if (!resolved()) {
+			return LineClassifier.classify(member);
+		}
+
+		Object event = ConversionStats.begin();
+		int elements = member.elements();
+		byte[] codes = new byte[elements + 1];
+		for (int e = 1; e <= elements; e++) {
+			long bits = classes == null || e < classes.length ? classesAt(e) : 0;
+			if ((bits & freeMask) != 0) {
+				codes[e] = LineClassifier.FREE;
+			} else if ((bits & spaceMask) != 0) {
+				codes[e] = LineClassifier.SHORT;
+			} else {
+				// the parser may call the ** line a comment; it's the one
+				// line whose text has to be read to find the compile time data
+				CharSequence text = member.elementChars(e);
+				if (LineClassifier.isDataMarker(text)) {
+					Arrays.fill(codes, e, elements + 1, LineClassifier.DATA);
+					break;
+				}
+				codes[e] = (bits & commentMask) != 0 ? LineClassifier.COMMENT_STAR : LineClassifier.classify(text);
+			}
+		}
+		ConversionStats.end(event, ConversionStats.CLASSIFY, 1, elements);
+		return codes;
+	}
+
+}
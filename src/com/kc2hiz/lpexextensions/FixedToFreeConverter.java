@@ -0,0 +1,1503 @@
+package com.kc2hiz.lpexextensions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+import java.util.regex.Matcher;
+
+/**
+ * Convert Fixed-specification to fully free format
+ * <p>This is the part of the conversion that doesn't need Lpex.  It works
+ * on a {@link SourceMember}, so the same code runs in the editor, in batch
+ * jobs and in benchmarks.
+ * <p>ConvertFixedToFreeAction adapts this to an LpexView.
+ * @author buck
+ * @version 01.00.00 Split out of ConvertFixedToFreeAction
+ *
+ */ 
+public class FixedToFreeConverter {
+
+	public FixedToFreeConverter() {
+		// empty constructor
+	}
+	
+	
+	
+	// default start column where free-form code will be placed
+	int startColumn = 1;
+	int padColumns = startColumn - 1;
+	
+	/**
+	 * Is this D- or P-spec the first line of something we know how to convert?
+	 * Subfields and parameters (blank definition type) are not; they get
+	 * converted along with the structure that owns them.
+	 * @param dspec DSpec - the parsed spec
+	 * @return true if the definition type starts a convertible structure
+	 */
+	boolean isStructureStart(DSpec dspec) {
+		return dspec.defType.trim().equals("b") ||
+				dspec.defType.trim().equals("c") ||
+				dspec.defType.trim().equals("e") ||
+				dspec.defType.equals("ds") ||
+				dspec.defType.equals("pi") ||
+				dspec.defType.equals("pr") ||
+				dspec.defType.trim().equals("s");
+	}
+
+
+	/**
+	 * Same test as isStructureStart(DSpec), straight from the columns
+	 * @param cols SpecColumns - the line to test
+	 * @return true if the definition type starts a convertible structure
+	 */
+	boolean isStructureStart(SpecColumns cols) {
+		return cols.isDefType("b") ||
+				cols.isDefType("c") ||
+				cols.isDefType("e") ||
+				cols.isDefType("ds") ||
+				cols.isDefType("pi") ||
+				cols.isDefType("pr") ||
+				cols.isDefType("s");
+	}
+
+
+	/**
+	 * Convert every H-spec, F-spec, D/P structure and run of calculations in the member
+	 * <p>One forward pass.  Nothing is written back; each block records
+	 * the elements it was generated from so the caller can put it where it wants.
+	 * @param member SourceMember - the member we're working on
+	 * @return blocks ArrayList - one per converted spec/structure, in element order
+	 */
+	ArrayList<ConvertedBlock> getMemberAsFree(SourceMember member) {
+		// one pass to classify every line; after this the text is only
+		// read for the lines we convert
+		return getMemberAsFree(member, LineClassifier.classify(member));
+	}
+
+
+	/**
+	 * Convert every H-, F-, D-, P- and C-spec in a member that has already been classified
+	 * @param member SourceMember - the member we're working on
+	 * @param classes byte[] - LineClassifier codes, indexed by element number
+	 * @return blocks ArrayList - one ConvertedBlock per spec or structure, in element order
+	 */
+	ArrayList<ConvertedBlock> getMemberAsFree(SourceMember member, byte[] classes) {
+		return getMemberAsFree(member, classes, 1, member.elements());
+	}
+
+
+	/**
+	 * Convert every spec or structure that starts in a range of elements
+	 * <p>A structure or statement that starts in the range is converted
+	 * whole, even if it runs past the end; a run of calculations stops at
+	 * the end of the range.
+	 * @param member SourceMember - the member we're working on
+	 * @param classes byte[] - LineClassifier codes, indexed by element number
+	 * @param first int - first element of the range
+	 * @param last int - last element of the range
+	 * @return blocks ArrayList - one ConvertedBlock per spec or structure, in element order
+	 */
+	ArrayList<ConvertedBlock> getMemberAsFree(SourceMember member, byte[] classes, int first, int last) {
+		ArrayList<ConvertedBlock> blocks = new ArrayList<ConvertedBlock>();
+		convertRange(member, classes, first, last, null, blocks);
+		return blocks;
+	}
+
+
+	/**
+	 * The forward pass behind getMemberAsFree, for one range of elements
+	 * @param member SourceMember - the member we're working on
+	 * @param classes byte[] - LineClassifier codes, indexed by element number
+	 * @param first int - first element of the range
+	 * @param last int - last element of the range
+	 * @param namesFrom CSpecConverter - shares its key lists and character fields
+	 * with the calculations in this range; null to gather them here
+	 * @param blocks ArrayList - converted blocks are added here, in element order
+	 * @return true if no IF/DO/SELECT/BEGSR group is left open at the end of the range
+	 */
+	boolean convertRange(SourceMember member, byte[] classes, int first, int last,
+			CSpecConverter namesFrom, final ArrayList<ConvertedBlock> blocks) {
+		return convertRange(member, classes, first, last, namesFrom, new BlockSink() {
+			private ConvertedBlock block;
+
+			public FreeFormEmitter.Sink start(int firstElement) {
+				block = new ConvertedBlock(firstElement);
+				return FreeFormEmitter.to(block.lines);
+			}
+
+			public void end(int lastElement) {
+				block.lastElement = lastElement;
+				blocks.add(block);
+			}
+
+			public void add(ConvertedBlock calcBlock) {
+				blocks.add(calcBlock);
+			}
+		});
+	}
+
+
+	/**
+	 * Where convertRange puts what it converts, as it goes
+	 */
+	interface BlockSink {
+		/**
+		 * An H-, F- or D/P block starts on this element
+		 * @param firstElement int
+		 * @return sink Sink - where its lines go
+		 */
+		FreeFormEmitter.Sink start(int firstElement);
+		/**
+		 * ...and that block is finished, ending on this element
+		 * @param lastElement int
+		 */
+		void end(int lastElement);
+		/**
+		 * A run of calculations, converted whole
+		 * @param calcBlock ConvertedBlock
+		 */
+		void add(ConvertedBlock calcBlock);
+	}
+
+
+	/**
+	 * The forward pass, handing each block on as soon as it's converted
+	 * @param member SourceMember - the member we're working on
+	 * @param classes byte[] - LineClassifier codes, indexed by element number
+	 * @param first int - first element of the range
+	 * @param last int - last element of the range
+	 * @param namesFrom CSpecConverter - as above
+	 * @param blocks BlockSink - gets the blocks in element order
+	 * @return true if no IF/DO/SELECT/BEGSR group is left open at the end of the range
+	 */
+	boolean convertRange(SourceMember member, byte[] classes, int first, int last,
+			CSpecConverter namesFrom, BlockSink blocks) {
+		ContinuationIndex names = new ContinuationIndex(this, member, first);
+		SpecColumns cols = new SpecColumns();
+		// calculations are streamed through one converter, which keeps track
+		// of the IF/DO groups from one run of C-specs to the next
+		CSpecConverter calcs = null;
+		// every H, F and D block is built in the same line buffer
+		FreeFormEmitter out = new FreeFormEmitter(null);
+		
+		int elements = Math.min(last, member.elements());
+		for (int e = first; e <= elements; e++) {
+			byte code = classes[e];
+			
+			// nothing but compile time data from here to the end
+			if (LineClassifier.isData(code)) {
+				break;
+			}
+
+			// need to at least see 6 columns or we don't possibly have a fixed form spec
+			if ((code & LineClassifier.KIND) == LineClassifier.SHORT) {
+				continue;
+			}
+
+			char specType = LineClassifier.spec(code);
+
+			// long names are picked up by the spec line they belong to
+			// (a C-spec ending in ... is continued by its own statement)
+			if (LineClassifier.isContinued(code) && specType != 'c') {
+				continue;
+			}
+			
+			if (specType == 'c') {
+				if (calcs == null) {
+					calcs = new CSpecConverter(this, member, classes, namesFrom);
+				}
+				ConvertedBlock calcBlock = calcs.convertRun(e, elements);
+				if (calcBlock != null) {
+					blocks.add(calcBlock);
+				}
+				e = calcs.consumedTo();
+				continue;
+			}
+			if (specType != 'h' && specType != 'f' && specType != 'd' && specType != 'p') {
+				continue;
+			}
+			String sourceStmt = member.elementText(e);
+
+			switch (specType) {
+				case 'h':
+					getHSpecAsFree(member, sourceStmt, e, out.sink(blocks.start(e)));
+					blocks.end(e);
+					break;
+				case 'f':
+					// continuation lines go along with their spec, converted or not
+					FSpec fspec = new FSpec(member, classes, sourceStmt, e);
+					if (fspec.unusable.length() == 0) {
+						getFSpecAsFree(fspec, out.sink(blocks.start(e)));
+						blocks.end(fspec.lastElement);
+					}
+					e = fspec.lastElement;
+					break;
+				case 'd':
+				case 'p':
+					// subfields and parameters are done along with their structure
+					// so only the first line of a structure needs parsing
+					if (isStructureStart(cols.reset(sourceStmt))) {
+						DSpec dspec = new DSpec(names, sourceStmt, e);
+						out.sink(blocks.start(e));
+						e = getSubfieldsAsFree(names, dspec, e, classes, out);
+						blocks.end(e);
+					}
+					break;
+				default:
+					break;
+			}
+		}
+		return calcs == null || !calcs.groupsOpen();
+	}
+
+
+	/**
+	 * Convert the one spec or structure that starts on an element
+	 * <p>The headless version of what the action does for the cursor line.
+	 * @param member SourceMember - the member we're working on
+	 * @param element int - element number of the H-, F- or C-spec or first line of the structure
+	 * @return block ConvertedBlock - or null if there's nothing there to convert
+	 */
+	ConvertedBlock getStructureAsFree(SourceMember member, int element) {
+		String sourceStmt = member.elementText(element);
+		
+		// need to at least see 6 columns or we don't possibly have a fixed form spec
+		if (sourceStmt.length() <= 5) {
+			return null;
+		}
+		
+		// a table row can look just like a spec
+		if (LineClassifier.dataStart(member, element) <= element) {
+			return null;
+		}
+		
+		ConvertedBlock block = new ConvertedBlock(element);
+		switch (getSpecFromTextNaive(sourceStmt)) {
+			case "h":
+				getHSpecAsFree(member, sourceStmt, element, block.lines);
+				return block;
+			case "f":
+				FSpec fspec = new FSpec(member, sourceStmt, element);
+				if (fspec.unusable.length() != 0) {
+					return null;
+				}
+				getFSpecAsFree(fspec, block.lines);
+				block.lastElement = fspec.lastElement;
+				return block;
+			case "c":
+				return new CSpecConverter(this, member, null).convertStatement(element);
+			case "d":
+			case "p":
+				if (!isStructureStart(new SpecColumns().reset(sourceStmt))) {
+					return null;
+				}
+				ContinuationIndex names = new ContinuationIndex(this, member, element);
+				DSpec dspec = new DSpec(names, sourceStmt, element);
+				block.lastElement = getSubfieldsAsFree(names, dspec, element, block.lines);
+				return block;
+			default:
+				return null;
+		}
+	}
+
+
+	/**
+	 * Write the member out with the converted blocks in place
+	 * <p>Same result as running ConvertMemberToFreeAction in the editor: the 
+	 * fixed-form lines stay, and each block follows the lines it came from.
+	 * <p>Written as the member is converted: the fixed-form lines go out as
+	 * the pass reaches them, and a block goes out once its last line has, so
+	 * only the block being built is ever held.
+	 * @param member SourceMember - the member we're working on
+	 * @param out Writer - where the converted member goes
+	 * @return blocks int - number of blocks converted
+	 * @throws IOException if the Writer fails
+	 */
+	int writeMemberAsFree(SourceMember member, Writer out) throws IOException {
+		MemberWriter writer = new MemberWriter(member, out);
+		try {
+			convertRange(member, LineClassifier.classify(member), 1, member.elements(), null, writer);
+			writer.copyTo(member.elements());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		ConversionStats.converted(writer.blocks, writer.written);
+		return writer.blocks;
+	}
+
+
+	/**
+	 * Writes the member as convertRange goes
+	 * <p>The lines of an H, F or D block are made before we know where the
+	 * block ends, so they wait in one reused buffer until the fixed-form
+	 * lines up to its end are out.
+	 */
+	private static final class MemberWriter implements BlockSink, FreeFormEmitter.Sink {
+		private final SourceMember member;
+		private final Writer out;
+		// the fixed-form lines are copied straight from the member's chars
+		private final FreeFormEmitter.Sink lines;
+		// the block being built, a line feed after each line
+		private final StringBuilder pending = new StringBuilder(1024);
+		private int pendingLines = 0;
+		private char[] chars = new char[1024];
+		// last element written so far
+		private int copied = 0;
+		int blocks = 0;
+		int written = 0;
+
+		MemberWriter(SourceMember member, Writer out) {
+			this.member = member;
+			this.out = out;
+			this.lines = FreeFormEmitter.to(out);
+		}
+
+		public FreeFormEmitter.Sink start(int firstElement) {
+			pending.setLength(0);
+			pendingLines = 0;
+			return this;
+		}
+
+		public void line(CharSequence line) {
+			if (line.length() != 0) {
+				pending.append(line).append('\n');
+				pendingLines++;
+			}
+		}
+
+		public void end(int lastElement) {
+			copyTo(lastElement);
+			int length = pending.length();
+			if (length > chars.length) {
+				chars = new char[Math.max(length, chars.length * 2)];
+			}
+			pending.getChars(0, length, chars, 0);
+			try {
+				out.write(chars, 0, length);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			written += pendingLines;
+			blocks++;
+		}
+
+		public void add(ConvertedBlock calcBlock) {
+			copyTo(calcBlock.lastElement);
+			for (String calcLine: calcBlock.lines) {
+				if (!calcLine.isEmpty()) {
+					lines.line(calcLine);
+					written++;
+				}
+			}
+			blocks++;
+		}
+
+		/**
+		 * Copy the fixed-form lines through this element
+		 * @param element int
+		 */
+		void copyTo(int element) {
+			while (copied < element) {
+				lines.line(member.elementChars(++copied));
+			}
+		}
+	}
+
+
+	/**
+	 * Write the member out with blocks already converted put in place
+	 * @param member SourceMember - the member we're working on
+	 * @param blocks ArrayList - converted blocks, in element order
+	 * @param out Writer - where the converted member goes
+	 * @return blocks int - number of blocks converted
+	 * @throws IOException if the Writer fails
+	 */
+	int writeMemberAsFree(SourceMember member, ArrayList<ConvertedBlock> blocks, Writer out) throws IOException {
+		int b = 0;
+		int written = 0;
+		// the fixed-form lines are copied straight from the member's chars;
+		// for a mapped member no String is made for the lines left alone
+		FreeFormEmitter.Sink sink = FreeFormEmitter.to(out);
+		
+		int elements = member.elements();
+		try {
+			for (int e = 1; e <= elements; e++) {
+				sink.line(member.elementChars(e));
+				
+				// any blocks that go after this element
+				while (b < blocks.size() && blocks.get(b).lastElement == e) {
+					for (String dsLine: blocks.get(b).lines) {
+						if (!dsLine.isEmpty()) {
+							sink.line(dsLine);
+							written++;
+						}
+					}
+					b++;
+				}
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		ConversionStats.converted(blocks.size(), written);
+		return blocks.size();
+	}
+
+
+	/**
+	 * Generate the free-form ctl-opt for one H-spec
+	 * @param member SourceMember - the member we're working on
+	 * @param sourceStmt String - the raw H-spec
+	 * @param thisLine int - element number of the H-spec
+	 * @param dsLines ArrayList - the generated line is added here
+	 */
+	void getHSpecAsFree(SourceMember member, String sourceStmt, int thisLine, ArrayList<String> dsLines) {
+		getHSpecAsFree(member, sourceStmt, thisLine, new FreeFormEmitter(FreeFormEmitter.to(dsLines)));
+	}
+
+	/**
+	 * Generate the free-form ctl-opt for one H-spec
+	 * @param member SourceMember - the member we're working on
+	 * @param sourceStmt String - the raw H-spec
+	 * @param thisLine int - element number of the H-spec
+	 * @param out FreeFormEmitter - the generated line is emitted here
+	 */
+	void getHSpecAsFree(SourceMember member, String sourceStmt, int thisLine, FreeFormEmitter out) {
+		// Instantiate a HSpec object.  The constructor will break out the columns.
+		HSpec hspec = new HSpec(member, sourceStmt, thisLine);
+
+		// keywords if there are any, the semicolon, 
+		// and right hand comments (if any) after the semicolon
+		out.start(padColumns).text("ctl-opt").word(hspec.keywords).end(hspec.rhComment);
+	}
+
+
+	/**
+	 * Generate the free-form dcl-f for one F-spec and its continuation lines
+	 * @param fspec FSpec - the parsed F-spec; check unusable first
+	 * @param dsLines ArrayList - the generated lines are added here
+	 */
+	void getFSpecAsFree(FSpec fspec, ArrayList<String> dsLines) {
+		getFSpecAsFree(fspec, new FreeFormEmitter(FreeFormEmitter.to(dsLines)));
+	}
+
+	/**
+	 * Generate the free-form dcl-f for one F-spec and its continuation lines
+	 * <p>Device, usage and keyed are only spelled out when they are not 
+	 * what free form would assume anyway.
+	 * @param fspec FSpec - the parsed F-spec; check unusable first
+	 * @param out FreeFormEmitter - the generated lines are emitted here
+	 */
+	void getFSpecAsFree(FSpec fspec, FreeFormEmitter out) {
+		out.start(FreeFormEmitter.DECLARE).text("dcl-f ").text(fspec.name);
+		
+		// program-described files give the record length with the device;
+		// an externally described disk file is the default
+		if (fspec.format == 'f') {
+			out.text(" ").text(fspec.device).text("(").text(Integer.toString(fspec.recordLength)).text(")");
+		} else if (!fspec.device.equals("disk")) {
+			out.text(" ").text(fspec.device);
+		}
+
+		// file type and file addition become usage
+		String usage = "";
+		switch (fspec.fileType) {
+			case 'i':
+				usage = fspec.addition == 'a' ? "*input:*output" : "*input";
+				break;
+			case 'o':
+				usage = "*output";
+				break;
+			case 'u':
+				usage = fspec.addition == 'a' ? "*update:*delete:*output" : "*update:*delete";
+				break;
+			case 'c':
+				usage = "*input:*output";
+				break;
+			default:
+				break;
+		}
+		String defaultUsage = "*input";
+		if (fspec.device.equals("printer")) {
+			defaultUsage = "*output";
+		} else if (fspec.device.equals("workstn")) {
+			defaultUsage = "*input:*output";
+		}
+		if (!usage.equals(defaultUsage)) {
+			out.text(" usage(").text(usage).text(")");
+		}
+		
+		// keyed access
+		if (fspec.recordAddressType == 'k') {
+			out.text(" keyed");
+		} else if (fspec.recordAddressType == 'a') {
+			out.text(" keyed(*char: ").text(Integer.toString(fspec.keyLength)).text(")");
+		}
+
+		// keywords if there are any, the semicolon,
+		// and right hand comments (if any) after the semicolon
+		out.word(fspec.keywords).end(fspec.rhComment);
+		
+		// carry the comments from among the continuation lines forward
+		for (String comment: fspec.comments) {
+			out.comment(comment);
+		}
+	}
+
+
+	/**
+	 * Generate the free-form lines for one structure without touching the editor
+	 * @param names ContinuationIndex - long names for the member we're working on
+	 * @param dspec DSpec - the first line of the structure (DS, PR, PI)
+	 * @param specLineNumber int - element number of the first line of the structure
+	 * @param dsLines ArrayList - the generated lines are added here
+	 * @return lastSubfieldNumber int - element number of the last line consumed
+	 */
+	int getSubfieldsAsFree(ContinuationIndex names, DSpec dspec, int specLineNumber, ArrayList<String> dsLines) {
+		return getSubfieldsAsFree(names, dspec, specLineNumber, null, new FreeFormEmitter(FreeFormEmitter.to(dsLines)));
+	}
+
+	/**
+	 * Generate the free-form lines for one structure without touching the editor
+	 * @param names ContinuationIndex - long names for the member we're working on
+	 * @param dspec DSpec - the first line of the structure (DS, PR, PI)
+	 * @param specLineNumber int - element number of the first line of the structure
+	 * @param classes byte[] - LineClassifier codes for the member, or null to classify 
+	 * each subfield from its text
+	 * @param out FreeFormEmitter - the generated lines are emitted here
+	 * @return lastSubfieldNumber int - element number of the last line consumed
+	 */
+	int getSubfieldsAsFree(ContinuationIndex names, DSpec dspec, int specLineNumber, byte[] classes, FreeFormEmitter out) {
+		SourceMember member = names.member();
+		SpecColumns cols = new SpecColumns();
+		int e = 0;
+		int lastSubfieldNumber = specLineNumber;	
+		String defType = dspec.defType.trim();
+				
+		// the declare uses the definition type
+		// unless b, which is a P-spec and s/b 'proc'
+		// unless e, which gets nothing for the declaration
+		if (!defType.equals("e")) {
+			out.start(FreeFormEmitter.DECLARE).text("dcl-");
+			if (!defType.equals("b")) {
+				out.text(defType).text(" ").text(dspec.name);
+			} else {
+				out.text("proc ").text(dspec.name);
+			}
+				
+			// if there is a datatype, append it
+			Object event = ConversionStats.begin();
+			String subfieldDataType = getDataTypeKeyword(dspec.fromPos, dspec.len, dspec.dataType, dspec.decimals, dspec.keywords);
+			ConversionStats.end(event, ConversionStats.DATA_TYPE, specLineNumber, 1);
+			out.word(subfieldDataType);
+
+			// if there are keywords, append them
+			// first, strip out procptr
+			if (dspec.keywords.length() != 0) {
+				dspec.keywords = dspec.keywords.replace("procptr", "");
+				out.text(" ").text(dspec.keywords);
+			}
+
+			// the semicolon, and right hand comments (if any) after it
+			out.end(dspec.rhComment);
+		}
+
+		
+		// loop forward through the next set of source lines
+		// until the end of the structure is found
+		// note that for standalone and constant lines, the very next spec terminates the 'structure'
+		for (e = specLineNumber + 1; e <= member.elements(); e++) {
+			byte code = classOf(member, classes, e);
+			
+			// if blank line, assume end of struc
+			// need to at least see 6 columns or we don't possibly have a d-spec
+			if ((code & LineClassifier.KIND) == LineClassifier.SHORT) {
+				break;
+			}
+
+			// comments have no fields to parse, but  
+			// carry the comments forward into the converted block
+			if (LineClassifier.isComment(code)) {
+				out.comment(getComment(member.elementText(e)).trim());
+				continue;
+			}
+				
+			// read the next line if this one is a continuation
+			if (LineClassifier.isContinued(code)) {
+				continue;
+			}
+
+			// leave if we're not looking at a D-specification
+			if (LineClassifier.spec(code) != 'd') {
+				break;
+			}
+
+			// look at the columns in place; only what goes into the 
+			// generated line gets turned into a String
+			cols.reset(member.elementChars(e));
+
+			// leave the loop if we've reached the end of the subfields
+			if (!cols.isDefTypeBlank()) {
+				break;
+			}
+
+			String keywords = cols.keywords();
+			if (keywords.length() != 0 && cols.hasLenAdjustment()) {
+				keywords = getKeywordsWithLenAdjustment(keywords, cols.lenText());
+			}
+
+			// now generate the keywords for data type
+			Object event = ConversionStats.begin();
+			String dataTypeKwdDS = getDataTypeKeyword(cols, keywords);
+			ConversionStats.end(event, ConversionStats.DATA_TYPE, e, 1);
+
+			// keywords are optional; don't leave a trailing space if none needed
+			// also, strip procptr
+			out.start(FreeFormEmitter.SUBFIELD).text(names.nameAt(e)).text(" ").text(dataTypeKwdDS);
+			if (keywords.length() != 0) {
+				out.text(" ").text(keywords.replace("procptr", ""));
+			}
+
+			// the terminating semicolon; if we have a right hand comment, carry it forward
+			out.end(cols.rhComment());
+			
+			// save the element number of the last subfield we actually processed
+			lastSubfieldNumber = e;
+		}
+		
+		// ...and the end
+		// not needed for standalone and constant
+		if (!defType.equals("c") && 
+			!defType.equals("s") &&
+			!defType.equals("b") &&
+			!defType.equals("p")) {
+			
+			// the declare uses the definition type
+			// unless b/e, which are P-specs and s/b 'proc'
+			out.endGroup(defType.equals("e") ? "proc" : dspec.defType);
+		}
+
+		return lastSubfieldNumber;
+	}
+
+
+/**
+ * build up the data type keyword based on the data type
+ *   which has been partially parsed out of the d-spec
+ * @param fromPos String
+ * @param len String
+ * @param dataType String
+ * @param decimals String
+ * @param keywords String
+ * @return dataTypeKwd String
+ */
+String getDataTypeKeyword(String fromPos, String len, String dataType, String decimals, String keywords) {
+	String dataTypeKwd = "";
+	int tempLen = 0;
+
+	// the data type can be blank and the RPG compiler will
+	// supply a rational default.  We need to do the same thing.
+	// note that pointer data types have no length
+	if (len.length() != 0 && dataType != "*") {
+		if (dataType.length() == 0) {
+			if (decimals.length() == 0) {
+				dataType = "a";
+			} else {
+				dataType = "p";
+			}
+		}
+	}
+
+	// have a length adjustment.  No data type keyword for this.
+	// instead, append the adjustment to the LIKE keyword
+	// in the getKeywordsFromText method
+	if (!len.matches(".*\\+.*")) {
+		// old style from/to specs
+		// convert length 
+		String tempLenChar = len;
+		if (fromPos.length() != 0) {
+			tempLen = Integer.parseInt(len) - Integer.parseInt(fromPos) + 1;
+			tempLenChar = String.valueOf(tempLen);
+		}
+
+		// data type
+		// TODO is this all the possible data types?
+		switch (dataType) {
+		case "":	// data structures
+			dataTypeKwd = "";
+			break;
+		case "a":
+			dataTypeKwd = "char(" + tempLenChar + ")";
+			break;
+		case "f":
+			dataTypeKwd = "float(" + tempLenChar + ")";
+			break;
+		case "i":
+			dataTypeKwd = "int(" + tempLenChar + ")";
+			break;
+		case "p":
+			dataTypeKwd = "packed(" + tempLenChar + ": " + decimals + ")";
+			break;
+		case "s":
+			dataTypeKwd = "zoned(" + tempLenChar + ": " + decimals + ")";
+			break;
+		case "u":
+			dataTypeKwd = "uns(" + tempLenChar + ")";
+			break;
+		case "*":
+			// the procptr keyword becomes pointer(*proc)
+			int i = keywords.indexOf("procptr");
+			String procKwd = "";
+			if (i != -1) {
+				procKwd = "(*proc)";
+			}
+			dataTypeKwd = "pointer" + procKwd;
+			break;
+		default:
+			dataTypeKwd = "unk(" + dataType + ") tempLenChar("
+					+ tempLenChar + ")";
+			break;
+		}
+
+		// we may have an old style from-to situation
+		// use the POS keyword to tell the compiler where the subfield starts
+		if (fromPos.length() != 0) {
+			dataTypeKwd = dataTypeKwd.concat(" pos(" + fromPos + ")");
+		}
+	}
+
+	return dataTypeKwd;
+}
+
+
+
+
+
+
+
+
+
+/**
+ * build up the data type keyword straight from the columns of a d-spec
+ * <p>Same result as the String version, but works from the int 
+ * length, position and decimals.  Anything that isn't a plain number
+ * goes through the String version.
+ * @param cols SpecColumns - the d-spec
+ * @param keywords String - keywords, already lower case
+ * @return dataTypeKwd String
+ */
+String getDataTypeKeyword(SpecColumns cols, String keywords) {
+	int len = cols.len();
+	int fromPos = cols.fromPos();
+	int decimals = cols.decimals();
+	char dataType = cols.dataType();
+
+	// length adjustments, odd characters and From without Length
+	if (len == SpecColumns.INVALID || fromPos == SpecColumns.INVALID || 
+			decimals == SpecColumns.INVALID || 
+			(fromPos != SpecColumns.NONE && len == SpecColumns.NONE)) {
+		return getDataTypeKeyword(cols.fromPosText(), cols.lenText(), cols.dataTypeText(), cols.decimalsText(), keywords);
+	}
+
+	// the data type can be blank and the RPG compiler will
+	// supply a rational default.  We need to do the same thing.
+	if (len != SpecColumns.NONE && dataType == ' ') {
+		if (decimals == SpecColumns.NONE) {
+			dataType = 'a';
+		} else {
+			dataType = 'p';
+		}
+	}
+
+	// old style from/to specs
+	// convert length 
+	int tempLen = len;
+	if (fromPos != SpecColumns.NONE) {
+		tempLen = len - fromPos + 1;
+	}
+
+	StringBuilder dataTypeKwd = new StringBuilder(24);
+	switch (dataType) {
+	case ' ':	// data structures
+		break;
+	case 'a':
+		appendLength(dataTypeKwd.append("char("), tempLen).append(')');
+		break;
+	case 'f':
+		appendLength(dataTypeKwd.append("float("), tempLen).append(')');
+		break;
+	case 'i':
+		appendLength(dataTypeKwd.append("int("), tempLen).append(')');
+		break;
+	case 'p':
+		appendLength(appendLength(dataTypeKwd.append("packed("), tempLen).append(": "), decimals).append(')');
+		break;
+	case 's':
+		appendLength(appendLength(dataTypeKwd.append("zoned("), tempLen).append(": "), decimals).append(')');
+		break;
+	case 'u':
+		appendLength(dataTypeKwd.append("uns("), tempLen).append(')');
+		break;
+	case '*':
+		// the procptr keyword becomes pointer(*proc)
+		dataTypeKwd.append("pointer");
+		if (keywords.indexOf("procptr") != -1) {
+			dataTypeKwd.append("(*proc)");
+		}
+		break;
+	default:
+		dataTypeKwd.append("unk(").append(dataType).append(") tempLenChar(");
+		appendLength(dataTypeKwd, tempLen).append(')');
+		break;
+	}
+
+	// we may have an old style from-to situation
+	// use the POS keyword to tell the compiler where the subfield starts
+	if (fromPos != SpecColumns.NONE) {
+		dataTypeKwd.append(" pos(").append(fromPos).append(')');
+	}
+
+	return dataTypeKwd.toString();
+}
+
+// blank columns print as nothing
+private StringBuilder appendLength(StringBuilder sb, int value) {
+	if (value != SpecColumns.NONE) {
+		sb.append(value);
+	}
+	return sb;
+}
+
+
+/**
+ * Add a length adjustment (+n) from the Length column to the LIKE keyword
+ * @param keywords String - keywords, already lower case
+ * @param len String - Length / To column
+ * @return keywords String - with LIKE(x: +n) if there was a LIKE
+ */
+String getKeywordsWithLenAdjustment(String keywords, String len) {
+	String keywordsAdj = "";
+
+	if (len.matches(".*\\+.*")) {					// have plus
+		log("len.matches +");
+		if (keywords.matches(".*like(.*).*")) {		// have LIKE()
+			log("keywords.matches like(");
+			
+			// yes, length adjustment
+			// delete the spaces
+			String lenAdj = len.replace(" ", "").trim();
+			if (tracing()) {
+				log("lenAdj=" + lenAdj);
+			}
+
+			// split the LIKE() into two strings by use of regex groups
+			// ...LIKE(LIKEVAR
+			// ) INZ(12)...
+			Pattern likeSplit = Pattern.compile("(.*like\\([^\\)]*)(\\).*)");
+			Matcher m = likeSplit.matcher(keywords);
+			if (m.matches()) {
+				if (tracing()) {
+					log("group 1=" + m.group(1));
+					log("group 2=" + m.group(2));
+				}
+			
+				// re-assemble with the length adjustment inserted
+				keywordsAdj = m.group(1) + ": " + lenAdj + m.group(2);
+				if (tracing()) {
+					log("keywordsAdj=" + keywordsAdj);
+				}
+				
+				keywords = keywordsAdj;
+			} else {
+				log("no match");
+			}
+		}
+	}
+	return keywords;
+}
+
+
+
+//utility methods
+
+/**
+* Extract RPG specification type (D, P, C, F) from a line of source code
+* @param sourceStmt String raw text
+* @return spec String lower case spec (c, d, f, p, etc or blank if not a spec we care about)
+* 
+* We don't need to worry about free-form declarations, because they're already free :-)
+*/
+String getSpecFromTextNaive(String sourceStmt) {
+	// Naive implementation
+	// a row of compile time data looks like any other line; 
+	// callers check LineClassifier.dataStart first
+	// can't detect 'already free' lines
+	// LineClassifier does it in one pass over the line
+	return LineClassifier.specString(sourceStmt);
+}
+
+
+/**
+* is this entire spec a comment line?
+* @param sourceStmt String - raw D-specification
+* @return true if entire line is a comment
+*/
+boolean isComment(String sourceStmt) {
+	// comments can be either a * in column 7 or
+	// a pair of slashes preceded by optional white space
+	return LineClassifier.isComment(LineClassifier.classify(sourceStmt));
+}
+
+/**
+* extract comment from a comment line
+* @param sourceStmt String - raw D-specification
+* @return comment String
+*/
+String getComment(String sourceStmt) {
+	return LineClassifier.comment(sourceStmt);
+}
+
+
+/**
+* Extract right hand comment from raw d-spec
+* @param sourceStmt String raw d-spec
+* @return rhComment String right-hand comment
+*/
+String getRhCommentFromText(String sourceStmt) {
+String rhComment = "";
+
+if (sourceStmt.length() > 81) {
+	int i = 100;
+	if (sourceStmt.length() <= i) {
+		i = sourceStmt.length();
+	}
+	rhComment = sourceStmt.substring(80, i).trim();
+}
+return rhComment;
+}
+
+/**
+* Log debugging text
+* There is no editor log outside of Lpex; ConvertFixedToFreeAction 
+* sends this to the trace log
+* <p>Check tracing() before building the message, so nothing is
+* concatenated when nobody is listening
+* @param message String 
+*/
+void log(String message) {
+}
+
+/**
+* @return true if log() messages go anywhere
+*/
+boolean tracing() {
+	return false;
+}
+
+/**
+ * Left pad a string
+ * returns the original string with 1-based space characters on the left
+ * @parm spec String
+ */
+public String padLeft(String spec, int padLength) {
+	return FreeFormEmitter.indent(padLength) + spec;
+}
+
+/**
+* The LineClassifier code of an element: looked up when the member has 
+* been classified already, worked out from its text when it hasn't
+* @param member SourceMember
+* @param classes byte[] - codes indexed by element number, or null
+* @param element int
+* @return code byte
+*/
+static byte classOf(SourceMember member, byte[] classes, int element) {
+	return classes != null ? classes[element] : LineClassifier.classify(member.elementChars(element));
+}
+
+
+/**
+* This stores the various column based fields for an h-spec
+* This object tokenises the line with the definitions.  It will also move backward 
+* in the member's text lines to accumulate names continued from earlier lines.
+* @param member SourceMember 
+* @param dSpec String a single raw d-spec (field / subfield)
+* @author buck
+*
+*/
+class HSpec {
+public String spec = "";
+public String keywords = "";
+public String rhComment = "";
+public boolean isComment = false;
+public String longComment = "";
+
+// constructor
+public HSpec(SourceMember member, String sourceStmt, int thisLine) {
+	
+	// I prefer lower case, so everything except the name will be monocased
+	// RDi trims each line, so they don't all equal 100 bytes...
+	// must test for out of bounds before substringing!
+	
+	/*
+	 *  1 -  5 sequence number / text
+	 *  6 -  6 hSpec 
+	 *  7 - 80 keywords
+	 * 81 -100 comment
+	 * 
+	 * Alternatively, there can be a comment of the form:
+	 *  6 -  6 hSpec 
+	 *  7 -  7 *
+	 *  8 -100 comment
+	 *  
+	 * Alternatively, there can be a comment of the form:  
+	 * 6 -  7 blanks
+	 * 8 -100 // comment.  Note that there can be any number of blanks 
+	 *                     preceding the //.
+	 *                     
+	 * Alternatively, there can be a continuation line of the form:
+	 * 6 -  6 d
+	 * 7 - 80 someName...                     
+	 * 
+	 */
+		
+	Object event = ConversionStats.begin();
+	spec = getSpecFromTextNaive(sourceStmt);
+	
+	isComment = isComment(sourceStmt);
+	
+	// early exit if a comment
+	if (isComment) {
+		longComment = getComment(sourceStmt);
+		ConversionStats.end(event, ConversionStats.PARSE_H, thisLine, 1);
+		return;
+	}
+
+	keywords = getKeywordsFromHSpec(sourceStmt);
+	rhComment = getRhCommentFromText(sourceStmt);
+	ConversionStats.end(event, ConversionStats.PARSE_H, thisLine, 1);
+
+}
+/**
+ * Extract keywords from raw h-spec
+ * @param sourceStmt hSpec String raw h-spec
+ * @return keywords String keywords
+ */
+private String getKeywordsFromHSpec(String sourceStmt) {
+	String keywords = "";
+
+	if (tracing()) {
+		log("start getKeywordsFromTextString " + sourceStmt);
+	}
+
+	if (sourceStmt.length() > 7) {
+		int i = 80;
+		if (sourceStmt.length() <= i) {
+			i = sourceStmt.length();
+		}
+		keywords = sourceStmt.substring(7, i).toLowerCase().trim();
+
+	}
+	return keywords;
+}
+
+}
+
+
+/**
+ * This stores the various column based fields for an f-spec
+ * The columns are read in place through a SpecColumns; only the name, device
+ * and keywords become Strings.  Continuation lines (nothing in columns 7-43,
+ * just more keywords) are picked up along with the spec they belong to.
+ * 
+ * @param member SourceMember 
+ * @param sourceStmt String a single raw f-spec
+ * @author buck
+ *
+ */
+class FSpec {
+	public String spec = "";
+	public String name = "";
+	public char fileType = ' ';
+	public char designation = ' ';
+	public char addition = ' ';
+	public char format = ' ';
+	public int recordLength = SpecColumns.NONE;
+	public char limits = ' ';
+	public int keyLength = SpecColumns.NONE;
+	public char recordAddressType = ' ';
+	public char organization = ' ';
+	public String device = "";
+	public String keywords = "";
+	public String rhComment = "";
+	// comment lines found among the continuation lines
+	public ArrayList<String> comments = new ArrayList<String>();
+	// element number of the last line that belongs to this spec
+	public int lastElement = 0;
+	// why there is no free-form version; empty if there is one
+	public String unusable = "";
+
+	// constructor
+	public FSpec(SourceMember member, String sourceStmt, int thisLine) {
+		this(member, null, sourceStmt, thisLine);
+	}
+
+	// constructor, for a member that has been classified already
+	public FSpec(SourceMember member, byte[] classes, String sourceStmt, int thisLine) {
+		
+		/*
+		 *  1 -  5 sequence number / text
+		 *  6 -  6 fSpec 
+		 *  7 - 16 file name
+		 * 17 - 17 file type (i, o, u, c)
+		 * 18 - 18 file designation (' ', f; p, s, r, t are cycle files)
+		 * 19 - 19 end of file
+		 * 20 - 20 file addition (a)
+		 * 21 - 21 sequence
+		 * 22 - 22 file format (e, f)
+		 * 23 - 27 record length
+		 * 28 - 28 limits processing
+		 * 29 - 33 length of key or record address
+		 * 34 - 34 record address type (k, a, ...)
+		 * 35 - 35 file organization (i, t)
+		 * 36 - 42 device
+		 * 44 - 80 keywords
+		 * 81 -100 comment
+		 * 
+		 * Continuation lines have columns 7-43 blank:
+		 *  6 -  6 f
+		 * 44 - 80 more keywords
+		 */
+
+		Object event = ConversionStats.begin();
+		SpecColumns cols = new SpecColumns().reset(sourceStmt);
+		
+		spec = getSpecFromTextNaive(sourceStmt);
+		lastElement = thisLine;
+		if (cols.isFileContinuation()) {
+			unusable = "Continuation line? " + sourceStmt.trim();
+			ConversionStats.end(event, ConversionStats.PARSE_F, thisLine, 1);
+			return;
+		}
+		
+		name = cols.fileName();
+		fileType = cols.column(SpecColumns.FILE_TYPE);
+		designation = cols.column(SpecColumns.FILE_DESIGNATION);
+		addition = cols.column(SpecColumns.FILE_ADDITION);
+		format = cols.column(SpecColumns.FILE_FORMAT);
+		recordLength = cols.recordLength();
+		limits = cols.column(SpecColumns.LIMITS);
+		keyLength = cols.keyLength();
+		recordAddressType = cols.column(SpecColumns.RECORD_ADDRESS_TYPE);
+		organization = cols.column(SpecColumns.FILE_ORGANIZATION);
+		device = cols.deviceText();
+		keywords = cols.keywords();
+		rhComment = cols.rhComment();
+		
+		// keywords carried on to the following lines
+		ArrayList<String> pendingComments = new ArrayList<String>();
+		for (int e = thisLine + 1; e <= member.elements(); e++) {
+			byte code = classOf(member, classes, e);
+			
+			// comments belong to the spec only if another continuation follows
+			if (LineClassifier.isComment(code)) {
+				pendingComments.add(getComment(member.elementText(e)).trim());
+				continue;
+			}
+			if (LineClassifier.spec(code) != 'f' || !cols.reset(member.elementChars(e)).isFileContinuation()) {
+				break;
+			}
+			
+			String more = cols.keywords();
+			if (more.length() != 0) {
+				keywords = keywords.length() == 0 ? more : keywords + " " + more;
+			}
+			if (rhComment.length() == 0) {
+				rhComment = cols.rhComment();
+			}
+			comments.addAll(pendingComments);
+			pendingComments.clear();
+			lastElement = e;
+		}
+		
+		unusable = getUnusableReason();
+		ConversionStats.end(event, ConversionStats.PARSE_F, thisLine, lastElement - thisLine + 1);
+	}
+
+	// the fixed-form options free form has no way of saying
+	private String getUnusableReason() {
+		if (fileType != 'i' && fileType != 'o' && fileType != 'u' && fileType != 'c') {
+			return "File type is " + fileType;
+		}
+		if (designation != ' ' && designation != 'f') {
+			return "Primary, secondary, table and record address files are cycle only";
+		}
+		if (limits != ' ') {
+			return "Limits processing";
+		}
+		if (format != 'e' && format != 'f') {
+			return "File format is " + format;
+		}
+		if (format == 'f' && recordLength < 1) {
+			return "Program-described file with no record length";
+		}
+		if (recordAddressType == 'a') {
+			if (organization != 'i' || keyLength < 1) {
+				return "Character key without indexed organization and key length";
+			}
+		} else if (recordAddressType != ' ' && recordAddressType != 'k') {
+			return "Record address type " + recordAddressType;
+		}
+		if (!device.equals("disk") && !device.equals("printer") && !device.equals("workstn") &&
+				!device.equals("seq") && !device.equals("special")) {
+			return "Device is " + device;
+		}
+		return "";
+	}
+
+}
+
+
+/**
+ * This stores the various column based fields for a d-spec
+ * This object tokenises the line with the definitions.  Names continued from 
+ * earlier lines come from a ContinuationIndex.
+ * 
+ * @param member SourceMember 
+ * @param dSpec String a single raw d-spec (field / subfield)
+ * @author buck
+ *
+ */
+class DSpec {
+	public String spec = "";
+	public String name = "";
+	public String extType = "";
+	public String dsType = "";
+	public String defType = "";
+	public String fromPos = "";
+	public String len = "";
+	public String dataType = "";
+	public String decimals = "";
+	public String keywords = "";
+	public String rhComment = "";
+	public String dataTypeKwd = "";
+	public boolean isComment = false;
+	public String longComment = "";
+	
+	// constructor
+	public DSpec(SourceMember member, String sourceStmt, int thisLine) {
+		this(new ContinuationIndex(FixedToFreeConverter.this, member, thisLine), sourceStmt, thisLine);
+	}
+
+	/**
+	 * Parse a d-spec, taking its long name from an index that is shared
+	 * by all the specs in one conversion
+	 * @param names ContinuationIndex
+	 * @param sourceStmt String a single raw d-spec
+	 * @param thisLine int element number of the d-spec
+	 */
+	public DSpec(ContinuationIndex names, String sourceStmt, int thisLine) {
+		
+		// I prefer lower case, so everything except the name will be monocased
+		// RDi trims each line, so they don't all equal 100 bytes...
+		// must test for out of bounds before substringing!
+		
+		/*
+		 *  1 -  5 sequence number / text
+		 *  6 -  6 dSpec 
+		 *  7 - 21 name
+		 * 22 - 22 external type (' ', 'e')
+		 * 23 - 23 DS type (' ', 's', 'u')
+		 * 24 - 25 def type (' ', 'c', 'ds', 'pi', 'pr')
+		 * 26 - 32 from
+		 * 33 - 39 len / to
+		 * 40 - 40 type (a, p, i, z, *, etc)
+		 * 41 - 42 decimal
+		 * 44 - 80 keywords
+		 * 81 -100 comment
+		 * 
+		 * Alternatively, there can be a comment of the form:
+		 *  6 -  6 dSpec 
+		 *  7 -  7 *
+		 *  8 -100 comment
+		 *  
+		 * Alternatively, there can be a comment of the form:  
+		 * 6 -  7 blanks
+		 * 8 -100 // comment.  Note that there can be any number of blanks 
+		 *                     preceding the //.
+		 *                     
+		 * Alternatively, there can be a continuation line of the form:
+		 * 6 -  6 d
+		 * 7 - 80 someName...                     
+		 * 
+		 */
+			
+		Object event = ConversionStats.begin();
+		spec = getSpecFromTextNaive(sourceStmt);
+		
+		isComment = isComment(sourceStmt);
+		
+		// early exit if a comment
+		if (isComment) {
+			longComment = getComment(sourceStmt);
+			ConversionStats.end(event, ConversionStats.PARSE_D, thisLine, 1);
+			return;
+		}
+
+		extType = getExtTypeFromText(sourceStmt);
+		dsType = getDsTypeFromText(sourceStmt);
+		defType = getDefTypeFromText(sourceStmt);
+		fromPos = getFromPosFromText(sourceStmt);
+		len = getLenFromText(sourceStmt);
+		dataType = getDataTypeFromText(sourceStmt);
+		decimals = getDecimalsFromText(sourceStmt);
+		keywords = getKeywordsFromDSpec(sourceStmt, len);
+		rhComment = getRhCommentFromText(sourceStmt);
+		ConversionStats.end(event, ConversionStats.PARSE_D, thisLine, 1);
+		// do this last to load the rest of the spec columns before it
+		name = names.nameAt(thisLine);
+
+	}
+
+	// ==========================================================
+	// individual methods to extract the columns
+
+
+	/**
+	 * Get external data type from raw d-spec
+	 * @param sourceStmt String raw d-spec
+	 * @return extType String
+	 */
+	private String getExtTypeFromText(String sourceStmt) {
+		String extType = "";
+		
+		if (sourceStmt.length() > 21) {
+			extType = sourceStmt.substring(21, 22).toLowerCase();
+		}
+		
+		return extType;
+	}
+
+	/**
+	 * Extract data structure type from d-spec
+	 * @param sourceStmt String raw d-spec
+	 * @return dsType String data structure type
+	 */
+	private String  getDsTypeFromText(String sourceStmt) {
+		String dsType = "";
+		
+		if (sourceStmt.length() > 22) {
+			dsType = sourceStmt.substring(22, 23).toLowerCase();
+		}
+		return dsType;
+	}
+
+	/**
+	 * Extract definition type from raw d-spec
+	 * @param sourceStmt dSpec String raw d-spec
+	 * @return defType String definition type
+	 */
+	private String getDefTypeFromText(String sourceStmt) {
+		String defType = "";
+		
+		if (sourceStmt.length() > 23) {
+			int i = 25;
+			if (sourceStmt.length() <= i) {
+				i = sourceStmt.length();
+			}
+			defType = sourceStmt.substring(23, i).toLowerCase();
+		}
+		return defType;
+	}
+
+	/**
+	 * Extract From position from raw d-spec
+	 * @param sourceStmt dSpec String raw d-spec
+	 * @return fromPos String From position
+	 */
+	private String getFromPosFromText(String sourceStmt) {
+		String fromPos = "";
+		
+		if (sourceStmt.length() > 31) {
+			fromPos = sourceStmt.substring(25, 32).toLowerCase().trim();
+		}
+		return fromPos;
+	}
+
+	/**
+	 * Extract Length / To position from raw d-spec
+	 * @param sourceStmt dSpec String raw d-spec
+	 * @return len String Length / To position 
+	 */
+	private String getLenFromText(String sourceStmt) {
+		String len = "";
+		
+		if (sourceStmt.length() > 38) {
+			len = sourceStmt.substring(32, 39).toLowerCase().trim();
+		}
+		return len;
+	}
+
+	/**
+	 * Extract data type from raw d-spec
+	 * @param sourceStmt dSpec String raw d-spec
+	 * @return dataType String data type
+	 */
+	private String getDataTypeFromText(String sourceStmt) {
+		String dataType = "";
+		
+		if (sourceStmt.length() > 39) {
+			dataType = sourceStmt.substring(39, 40).toLowerCase().trim();
+		}
+		return dataType;
+	}
+
+	/**
+	 * Extract decimals from raw d-spec
+	 * @param sourceStmt dSpec String raw d-spec
+	 * @return decimals String decimals
+	 */
+	private String getDecimalsFromText(String sourceStmt) {
+		String decimals = "";
+		
+		if (sourceStmt.length() > 41) {
+			decimals = sourceStmt.substring(40, 42).toLowerCase().trim();
+		}
+		return decimals;
+	}
+
+	/**
+	* Extract keywords from raw d-spec
+	* @param sourceStmt dSpec String raw d-spec
+	* @param len String to / length
+	* @return keywords String keywords
+	*/
+	private String getKeywordsFromDSpec(String sourceStmt, String len) {
+	String keywords = "";
+
+	if (tracing()) {
+		log("start getKeywordsFromTextString " + sourceStmt);
+	}
+
+	if (sourceStmt.length() > 43) {
+		int i = 80;
+		if (sourceStmt.length() <= i) {
+			i = sourceStmt.length();
+		}
+		keywords = sourceStmt.substring(43, i).toLowerCase().trim();
+		
+		// do we have a length adjustment?
+		if (keywords.length() > 0) {						// have keywords
+			if (tracing()) {
+				log("keywords.length()=" + keywords.length());
+			}
+			keywords = getKeywordsWithLenAdjustment(keywords, len);
+		}
+	}
+	return keywords;
+	}
+	
+}
+
+}
\ No newline at end of file
@@ -0,0 +1,412 @@
+package com.kc2hiz.lpexextensions;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+public class FixedToFreeConverterTest {
+
+	// a small member with one of each kind of thing we convert
+	static final String[] MEMBER = {
+		"     h debug option(*srcstmt)",
+		"     d customerRecord  ds                  qualified",
+		"     d  custNo                        7p 0",
+		"     d  aVeryLongSubfieldName...",
+		"     d                               10i 0",
+		"     d count           s             10i 0 inz(0)",
+		"     p getCust         b",
+		"     d getCust         pi",
+		"     d   custNo                       7p 0 const",
+		"     c                   eval      x = 1",
+		"     p getCust         e",
+	};
+
+	@Test
+	public void testGetMemberAsFree() {
+		FixedToFreeConverter c = new FixedToFreeConverter();
+		ArrayList<ConvertedBlock> blocks = c.getMemberAsFree(new ArraySourceMember(MEMBER));
+
+		assertEquals("block count", 7, blocks.size());
+
+		assertEquals("ctl-opt", "ctl-opt debug option(*srcstmt);", blocks.get(0).lines.get(0));
+
+		ConvertedBlock ds = blocks.get(1);
+		assertEquals("ds first", 2, ds.firstElement);
+		assertEquals("ds last", 5, ds.lastElement);
+		assertEquals("dcl-ds", "        dcl-ds customerRecord qualified;", ds.lines.get(0));
+		assertEquals("subfield", "           custNo packed(7: 0);", ds.lines.get(1));
+		assertEquals("long name", "           aVeryLongSubfieldName int(10);", ds.lines.get(2));
+		assertEquals("end-ds", "        end-ds;", ds.lines.get(3));
+
+		assertEquals("standalone", "        dcl-s count int(10) inz(0);", blocks.get(2).lines.get(0));
+		assertEquals("dcl-proc", "        dcl-proc getCust;", blocks.get(3).lines.get(0));
+		assertEquals("dcl-pi", "        dcl-pi getCust;", blocks.get(4).lines.get(0));
+		assertEquals("eval", "        x = 1;", blocks.get(5).lines.get(0));
+		assertEquals("end-proc", "        end-proc;", blocks.get(6).lines.get(0));
+		assertEquals("end-proc element", 11, blocks.get(6).firstElement);
+	}
+
+	@Test
+	public void testGetMemberAsFreeInRange() {
+		FixedToFreeConverter c = new FixedToFreeConverter();
+		SourceMember member = new ArraySourceMember(MEMBER);
+		byte[] classes = LineClassifier.classify(member);
+
+		// from the middle of the data structure to the standalone field
+		ArrayList<ConvertedBlock> blocks = c.getMemberAsFree(member, classes, 3, 6);
+		assertEquals("block count", 1, blocks.size());
+		assertEquals("standalone", "        dcl-s count int(10) inz(0);", blocks.get(0).lines.get(0));
+
+		// a structure that starts in the range is converted whole
+		blocks = c.getMemberAsFree(member, classes, 2, 3);
+		assertEquals("whole ds", 1, blocks.size());
+		assertEquals("ds last", 5, blocks.get(0).lastElement);
+	}
+
+	@Test
+	public void testParallelMemberConverter() throws Exception {
+		ArrayList<String> lines = new ArrayList<String>();
+		for (int i = 0; i < 4; i++) {
+			lines.addAll(Arrays.asList(MEMBER));
+		}
+		// an IF left open ahead of a structure: converted in one pass instead
+		String[] open = {
+			"     C                   IF        x = 1",
+			"     C                   EVAL      y = 2",
+			"     D rec             ds",
+			"     D  fld                          5a",
+			"     C                   ENDIF",
+		};
+		SourceMember balanced = new ArraySourceMember(lines);
+		lines.addAll(Arrays.asList(open));
+		SourceMember unbalanced = new ArraySourceMember(lines);
+
+		FixedToFreeConverter c = new FixedToFreeConverter();
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			ParallelMemberConverter parallel = new ParallelMemberConverter(c, pool, 1);
+			// a DS, P-spec B and PI in each copy, and the DS after the IF
+			assertEquals("pieces", 1 + 4 * 3 + 1 + 1, parallel.pieces(unbalanced, LineClassifier.classify(unbalanced)).length);
+			for (SourceMember member : new SourceMember[] {balanced, unbalanced}) {
+				StringWriter sequential = new StringWriter();
+				c.writeMemberAsFree(member, sequential);
+				StringWriter pieces = new StringWriter();
+				c.writeMemberAsFree(member, parallel.getMemberAsFree(member), pieces);
+				assertEquals("same as one pass", sequential.toString(), pieces.toString());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testMappedSourceMember() throws Exception {
+		Path lines = Files.createTempFile("member", ".rpgle");
+		Path records = Files.createTempFile("member", ".srcpf");
+		Path ebcdic = Files.createTempFile("member", ".srcpf");
+		Path stream = Files.createTempFile("member", ".rpgle");
+		try {
+			StringBuilder text = new StringBuilder();
+			StringBuilder fixed = new StringBuilder();
+			for (int i = 0; i < MEMBER.length; i++) {
+				text.append(MEMBER[i]).append(i % 2 == 0 ? "\n" : "\r\n");
+				fixed.append(String.format("%06d%06d%-100s", (i + 1) * 100, 0, MEMBER[i]));
+			}
+			Files.write(lines, text.toString().getBytes(BatchConvert.CHARSET));
+			Files.write(records, fixed.toString().getBytes(BatchConvert.CHARSET));
+			Files.write(ebcdic, fixed.toString().getBytes("IBM037"));
+
+			for (SourceMember member : new SourceMember[] {MappedSourceMember.lines(lines),
+					MappedSourceMember.records(records, MappedSourceMember.RECORD_LENGTH),
+					MappedSourceMember.records(ebcdic, MappedSourceMember.RECORD_LENGTH, 37)}) {
+				assertEquals("elements", MEMBER.length, member.elements());
+				assertEquals("first", MEMBER[0], member.elementText(1));
+				assertEquals("padding trimmed", MEMBER[3], member.elementText(4));
+				assertEquals("slice", MEMBER[10], member.elementChars(11).toString());
+				assertEquals("same blocks", 7, new FixedToFreeConverter().getMemberAsFree(member).size());
+			}
+
+			// an EBCDIC stream file, lines ended by NL (x'15')
+			byte[] first = MEMBER[0].getBytes("IBM037");
+			byte[] second = MEMBER[1].getBytes("IBM037");
+			byte[] nl = new byte[first.length + second.length + 2];
+			System.arraycopy(first, 0, nl, 0, first.length);
+			nl[first.length] = 0x15;
+			System.arraycopy(second, 0, nl, first.length + 1, second.length);
+			nl[nl.length - 1] = 0x15;
+			Files.write(stream, nl);
+			SourceMember member = MappedSourceMember.lines(stream, 37);
+			assertEquals("NL elements", 2, member.elements());
+			assertEquals("NL second", MEMBER[1], member.elementText(2));
+		} finally {
+			Files.delete(lines);
+			Files.delete(records);
+			Files.delete(ebcdic);
+			Files.delete(stream);
+		}
+	}
+
+	@Test
+	public void testGetFSpecAsFree() {
+		String[] member = {
+			"     FCUSTMAST  UF A E           K DISK    RENAME(CUSTR:CUSTREC)",
+			"     F* prefix the fields",
+			"     F                                     PREFIX(C_)",
+			"     FQSYSPRT   O    F  132        PRINTER OFLIND(*INOF)",
+			"     FINPUT     IP   E           K DISK",
+			"     FSCREEN    CF   E             WORKSTN SFILE(SFL:RRN)",
+			"     FFLAT      IF   F   80    10AIDISK    KEYLOC(5)",
+		};
+		FixedToFreeConverter c = new FixedToFreeConverter();
+		ArrayList<ConvertedBlock> blocks = c.getMemberAsFree(new ArraySourceMember(member));
+
+		// the primary file has no free form
+		assertEquals("block count", 4, blocks.size());
+
+		ConvertedBlock cust = blocks.get(0);
+		assertEquals("continuation consumed", 3, cust.lastElement);
+		assertEquals("update, add, keyed", "        dcl-f CUSTMAST usage(*update:*delete:*output) keyed rename(custr:custrec) prefix(c_);", cust.lines.get(0));
+		assertEquals("comment carried", "       // prefix the fields", cust.lines.get(1));
+
+		assertEquals("printer", "        dcl-f QSYSPRT printer(132) oflind(*inof);", blocks.get(1).lines.get(0));
+		assertEquals("workstn", "        dcl-f SCREEN workstn sfile(sfl:rrn);", blocks.get(2).lines.get(0));
+		assertEquals("program described", "        dcl-f FLAT disk(80) keyed(*char: 10) keyloc(5);", blocks.get(3).lines.get(0));
+
+		assertNull("cycle file", c.getStructureAsFree(new ArraySourceMember(member), 5));
+	}
+
+	@Test
+	public void testCSpecConverter() {
+		String[] member = {
+			"     D name            s             10a",
+			"     D code            s              3a",
+			"     D big             s             20a",
+			"     C                   IF        count > 10 and",
+			"     C                             flag = *on",
+			"     C                   EVAL      count = count + 1",
+			"     C                   ELSE",
+			"     C  N50              EVAL(H)   total = total * 1.5",
+			"     C                   ENDIF",
+			"     C* read the file",
+			"     C     custNo        CHAIN     CUSTMAST                           99",
+			"     C                   READ      CUSTMAST                               90",
+			"     C     count         DOWLT     10",
+			"     C     flag          ANDEQ     *ON",
+			"     C                   MOVEL     'AB'          name",
+			"     C                   MOVE      code          name",
+			"     C                   MOVE(P)   big           name",
+			"     C                   END",
+			"     C                   MOVE      123           amount",
+			"     C                   DO        10",
+			"     C                   EVAL      x = 1",
+			"     C                   ENDDO",
+			"     CL1                 EXSR      TOTALS",
+			"     C     TOTALS        BEGSR",
+			"     C   01              RETURN",
+			"     C                   ENDSR",
+		};
+		FixedToFreeConverter c = new FixedToFreeConverter();
+		ArrayList<ConvertedBlock> blocks = c.getMemberAsFree(new ArraySourceMember(member));
+
+		// three dcl-s, the IF..END run, the EVAL inside DO, the subroutine
+		assertEquals("block count", 6, blocks.size());
+
+		ConvertedBlock run = blocks.get(3);
+		assertEquals("run first", 4, run.firstElement);
+		assertEquals("run last", 18, run.lastElement);
+		String[] expected = {
+			"        if count > 10 and flag = *on;",
+			"          count = count + 1;",
+			"        else;",
+			"          if not *in50;",
+			"            eval(h) total = total * 1.5;",
+			"          endif;",
+			"        endif;",
+			"        // read the file",
+			"        chain custNo CUSTMAST;",
+			"        *in99 = not %found();",
+			"        read CUSTMAST;",
+			"        *in90 = %eof();",
+			"        dow count < 10 and flag = *ON;",
+			"          %subst(name: 1: 2) = 'AB';",
+			"          %subst(name: 8) = code;",
+			"          evalr name = big;",
+			"        enddo;",
+		};
+		assertEquals("run lines", Arrays.asList(expected), run.lines);
+
+		// numeric MOVE, counted DO and its ENDDO, and L1 are left alone
+		assertEquals("inside DO", 21, blocks.get(4).firstElement);
+		assertEquals("subroutine", 24, blocks.get(5).firstElement);
+		assertEquals("conditioned return", "          if *in01;", blocks.get(5).lines.get(1));
+
+		CSpecConverter single = new CSpecConverter(c, new ArraySourceMember(member), null);
+		assertNull("cycle control level", single.convertStatement(23));
+		assertNull("END on its own", single.convertStatement(18));
+
+		// CASxx lines, and the CAS after them, share one ENDCS
+		String[] cases = {
+			"     C     CASES         BEGSR",
+			"     C     code          CASEQ     'A'           DOA",
+			"     C     code          CASEQ     'B'           DOB",
+			"     C                   CAS                     DOOTHER",
+			"     C                   ENDCS",
+			"     C                   IF        x = 1",
+			"     C                   EVAL      y = 2",
+			"     C                   ENDIF",
+			"     C                   ENDSR",
+			"     C                   EVAL      z = 3",
+		};
+		blocks = c.getMemberAsFree(new ArraySourceMember(cases));
+		ConvertedBlock after = blocks.get(blocks.size() - 1);
+		assertEquals("after ENDCS", 6, after.firstElement);
+		assertEquals("after ENDCS last", 10, after.lastElement);
+		String[] afterCases = {
+			"          if x = 1;",
+			"            y = 2;",
+			"          endif;",
+			"        endsr;",
+			"        z = 3;",
+		};
+		assertEquals("after ENDCS lines", Arrays.asList(afterCases), after.lines);
+		CSpecConverter casRun = new CSpecConverter(c, new ArraySourceMember(cases), null);
+		for (int e = 1; e <= cases.length; e = casRun.consumedTo() + 1) {
+			casRun.convertRun(e);
+		}
+		assertFalse("groups closed", casRun.groupsOpen());
+
+		// MOVE needs to know the field; a name defined twice, or made
+		// varying on a keyword line, isn't trusted
+		String[] scoped = {
+			"     D glob            s             10a",
+			"     D vary            s             10a",
+			"     D                                     varying",
+			"     D fixed           s             10a",
+			"     P proc            B",
+			"     D glob            s              5p 0",
+			"     C                   MOVEL     'AB'          glob",
+			"     C                   MOVEL     'AB'          vary",
+			"     C                   MOVEL     'AB'          fixed",
+			"     P proc            E",
+		};
+		CSpecConverter moves = new CSpecConverter(c, new ArraySourceMember(scoped), null);
+		assertNull("shadowed", moves.convertStatement(7));
+		assertNull("varying on the next line", moves.convertStatement(8));
+		assertEquals("fixed", "        %subst(fixed: 1: 2) = 'AB';", moves.convertStatement(9).lines.get(0));
+	}
+
+	@Test
+	public void testContinuationIndex() {
+		String[] member = {
+			"     d first           s             10i 0",
+			"     d aVery...",
+			"      * comment in the middle of a name",
+			"     d  longName...",
+			"     d                 s             10i 0",
+			"     d next            s             10i 0",
+		};
+		FixedToFreeConverter c = new FixedToFreeConverter();
+		ContinuationIndex names = new ContinuationIndex(c, new ArraySourceMember(member), 1);
+		assertEquals("plain", "first", names.nameAt(1));
+		assertEquals("continued", "aVerylongName", names.nameAt(5));
+		assertEquals("after continued", "next", names.nameAt(6));
+
+		// starting part way through backs up to the start of the name
+		names = new ContinuationIndex(c, new ArraySourceMember(member), 5);
+		assertEquals("from the middle", "aVerylongName", names.nameAt(5));
+	}
+
+	@Test
+	public void testGetDataTypeKeywordFromColumns() {
+		FixedToFreeConverter c = new FixedToFreeConverter();
+		SpecColumns cols = new SpecColumns();
+		assertEquals("char", "char(10)", c.getDataTypeKeyword(cols.reset("     d  name                         10"), ""));
+		assertEquals("packed", "packed(7: 2)", c.getDataTypeKeyword(cols.reset("     d  name                          7  2"), ""));
+		assertEquals("int", "int(10)", c.getDataTypeKeyword(cols.reset("     d  name                         10I 0"), ""));
+		assertEquals("from/to", "char(5) pos(11)", c.getDataTypeKeyword(cols.reset("     d  name                  11     15"), ""));
+		assertEquals("procptr", "pointer(*proc)", c.getDataTypeKeyword(cols.reset("     d  name                           *   procptr"), "procptr"));
+		assertEquals("like +2", "", c.getDataTypeKeyword(cols.reset("     d  name                         +2    like(x)"), "like(x)"));
+		assertEquals("data structure", "", c.getDataTypeKeyword(cols.reset("     d  name           ds"), ""));
+	}
+
+	@Test
+	public void testLineClassifier() {
+		assertEquals("short", LineClassifier.SHORT, LineClassifier.classify("     "));
+		assertEquals("star comment", LineClassifier.COMMENT_STAR, LineClassifier.classify("     d* comment"));
+		assertEquals("slash comment", LineClassifier.COMMENT_SLASH, LineClassifier.classify("       // comment"));
+		assertEquals("table", LineClassifier.TABLE, LineClassifier.classify("**CTDATA arr"));
+		assertEquals("free", LineClassifier.FREE, LineClassifier.classify("dcl-s;"));
+		assertEquals("D", 'd', LineClassifier.spec(LineClassifier.classify("     D name            s             10i 0")));
+		byte code = LineClassifier.classify("     d aVeryLongName...");
+		assertEquals("continued spec", 'd', LineClassifier.spec(code));
+		assertTrue("continued", LineClassifier.isContinued(code));
+
+		String[] member = {"     h debug", "      * comment", "     p proc            b"};
+		byte[] classes = LineClassifier.classify(new ArraySourceMember(member));
+		assertEquals("member size", 4, classes.length);
+		assertEquals("member h", 'h', LineClassifier.spec(classes[1]));
+		assertTrue("member comment", LineClassifier.isComment(classes[2]));
+		assertEquals("member p", 'p', LineClassifier.spec(classes[3]));
+	}
+
+	@Test
+	public void testCompileTimeData() {
+		FixedToFreeConverter c = new FixedToFreeConverter();
+		String[] member = {
+				"     d arr             s             10    dim(2) ctdata",
+				"**CTDATA arr",
+				"     d row1            s             10i 0",
+				"     d row2            s             10i 0"};
+		SourceMember source = new ArraySourceMember(member);
+
+		byte[] classes = LineClassifier.classify(source);
+		assertEquals("spec", 'd', LineClassifier.spec(classes[1]));
+		assertTrue("marker", LineClassifier.isData(classes[2]));
+		assertTrue("row", LineClassifier.isData(classes[3]));
+		assertTrue("last row", LineClassifier.isData(classes[4]));
+
+		ArrayList<ConvertedBlock> blocks = c.getMemberAsFree(source, classes);
+		assertEquals("rows not converted", 1, blocks.size());
+		assertEquals("ends before data", 1, blocks.get(0).lastElement);
+		assertNull("row at cursor", c.getStructureAsFree(source, 3));
+
+		assertEquals("data start", 2, LineClassifier.dataStart(source, 4));
+		assertEquals("none up to the limit", 2, LineClassifier.dataStart(source, 1));
+		assertTrue("bare **", LineClassifier.isDataMarker("**"));
+		assertTrue("ftrans", LineClassifier.isDataMarker("**ftrans"));
+		assertFalse("banner", LineClassifier.isDataMarker("*****"));
+		assertTrue("**FREE", LineClassifier.isFullyFree("**FREE"));
+		assertFalse("**FREE is not data", LineClassifier.isDataMarker("**FREE"));
+	}
+
+	@Test
+	public void testFreeFormEmitter() {
+		ArrayList<String> lines = new ArrayList<String>();
+		FreeFormEmitter out = new FreeFormEmitter(FreeFormEmitter.to(lines));
+		out.start(FreeFormEmitter.DECLARE).text("dcl-ds ").text("cust").word("").word("qualified").end("");
+		out.start(FreeFormEmitter.SUBFIELD).text("name").text(" ").text("char(10)").end("who");
+		out.comment("more");
+		out.endGroup("ds");
+		assertEquals("dcl", "        dcl-ds cust qualified;", lines.get(0));
+		assertEquals("subfield", "           name char(10); // who", lines.get(1));
+		assertEquals("comment", "       // more", lines.get(2));
+		assertEquals("end", "        end-ds;", lines.get(3));
+
+		StringWriter written = new StringWriter();
+		out.sink(FreeFormEmitter.to(written));
+		out.start(0).text("ctl-opt").word("dftactgrp(*no)").end("");
+		assertEquals("writer", "ctl-opt dftactgrp(*no);\n", written.toString());
+
+		assertEquals("no blanks", "", FreeFormEmitter.indent(0));
+		assertEquals("cached", 8, FreeFormEmitter.indent(8).length());
+		assertEquals("long", 200, FreeFormEmitter.indent(200).length());
+		assertTrue("all blanks", FreeFormEmitter.indent(200).trim().isEmpty());
+	}
+
+}
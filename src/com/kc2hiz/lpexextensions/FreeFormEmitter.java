@@ -0,0 +1,217 @@
+package com.kc2hiz.lpexextensions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Build free-form lines in one reusable StringBuilder
+ * <p>A line is started at an indentation, has its words added, and is
+ * finished with the semicolon and any right hand comment; then it's handed
+ * to a Sink and the builder is cleared for the next line.  Indentation
+ * comes from blank strings made once, so a line costs no more than
+ * appending its text.
+ * <p>The Sink gets the builder itself, not a copy.  A sink that keeps the
+ * line (a list for a ConvertedBlock) makes its String then; one that only
+ * passes it on (a Writer) never does.
+ * <pre>
+ * emitter.start(FreeFormEmitter.DECLARE).text("dcl-s ").text(name)
+ *     .word(dataType).word(keywords).end(rhComment);
+ * </pre>
+ * @author buck
+ *
+ */
+public class FreeFormEmitter {
+
+	// column 9, where dcl-, end- and calculations start
+	public static final int DECLARE = 8;
+	// column 12, where subfields and parameters start
+	public static final int SUBFIELD = 11;
+	// column 8, where comments carried forward start
+	public static final int COMMENT = 7;
+
+	// blanks of each length, built once
+	private static final String[] INDENTS = new String[64];
+	static {
+		char[] blanks = new char[INDENTS.length];
+		Arrays.fill(blanks, ' ');
+		for (int i = 0; i < INDENTS.length; i++) {
+			INDENTS[i] = new String(blanks, 0, i);
+		}
+	}
+
+	/**
+	 * Where finished lines go
+	 */
+	public interface Sink {
+		/**
+		 * @param line CharSequence - only good until this returns; copy it to keep it
+		 */
+		void line(CharSequence line);
+	}
+
+	private final StringBuilder line = new StringBuilder(128);
+	private Sink sink;
+
+	/**
+	 * @param sink Sink - where finished lines go
+	 */
+	public FreeFormEmitter(Sink sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * Add each line to a list, as a String
+	 * @param lines List - ConvertedBlock.lines, usually
+	 * @return sink Sink
+	 */
+	public static Sink to(final List<String> lines) {
+		return new Sink() {
+			public void line(CharSequence line) {
+				lines.add(line.toString());
+			}
+		};
+	}
+
+	/**
+	 * Write each line and a line feed, without making a String of it
+	 * <p>An IOException from the Writer comes out as an UncheckedIOException.
+	 * @param out Writer - where the lines go
+	 * @return sink Sink
+	 */
+	public static Sink to(final Writer out) {
+		return new Sink() {
+			private char[] chars = new char[128];
+
+			public void line(CharSequence line) {
+				int length = line.length();
+				if (length > chars.length) {
+					chars = new char[Math.max(length, chars.length * 2)];
+				}
+				if (line instanceof StringBuilder) {
+					((StringBuilder) line).getChars(0, length, chars, 0);
+				} else if (line instanceof String) {
+					((String) line).getChars(0, length, chars, 0);
+				} else {
+					for (int i = 0; i < length; i++) {
+						chars[i] = line.charAt(i);
+					}
+				}
+				try {
+					out.write(chars, 0, length);
+					out.write('\n');
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Send the lines somewhere else from now on, so the emitter can be reused
+	 * @param sink Sink - where finished lines go
+	 * @return this FreeFormEmitter
+	 */
+	public FreeFormEmitter sink(Sink sink) {
+		this.sink = sink;
+		return this;
+	}
+
+	/**
+	 * Blanks, from the ones made once when there are enough
+	 * @param columns int - how many
+	 * @return blanks String
+	 */
+	public static String indent(int columns) {
+		if (columns <= 0) {
+			return "";
+		}
+		if (columns < INDENTS.length) {
+			return INDENTS[columns];
+		}
+		StringBuilder sb = new StringBuilder(columns);
+		for (int left = columns; left > 0; left -= INDENTS.length - 1) {
+			sb.append(INDENTS[Math.min(left, INDENTS.length - 1)]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Start a new line; anything not yet finished is thrown away
+	 * @param columns int - indentation
+	 * @return this FreeFormEmitter
+	 */
+	public FreeFormEmitter start(int columns) {
+		line.setLength(0);
+		while (columns >= INDENTS.length) {
+			line.append(INDENTS[INDENTS.length - 1]);
+			columns -= INDENTS.length - 1;
+		}
+		if (columns > 0) {
+			line.append(INDENTS[columns]);
+		}
+		return this;
+	}
+
+	/**
+	 * Append text as it is
+	 * @param text CharSequence
+	 * @return this FreeFormEmitter
+	 */
+	public FreeFormEmitter text(CharSequence text) {
+		line.append(text);
+		return this;
+	}
+
+	/**
+	 * Append a blank and a word, or nothing if the word is empty
+	 * @param word CharSequence - a data type, keywords...
+	 * @return this FreeFormEmitter
+	 */
+	public FreeFormEmitter word(CharSequence word) {
+		if (word.length() != 0) {
+			line.append(' ').append(word);
+		}
+		return this;
+	}
+
+	/**
+	 * Finish the statement: the semicolon, then the right hand comment if any
+	 * @param rhComment String - may be empty
+	 */
+	public void end(String rhComment) {
+		line.append(';');
+		if (rhComment.length() != 0) {
+			line.append(" // ").append(rhComment);
+		}
+		emit();
+	}
+
+	/**
+	 * A // comment line on its own
+	 * @param comment String - the text after the //
+	 */
+	public void comment(String comment) {
+		start(COMMENT).text("// ").text(comment);
+		emit();
+	}
+
+	/**
+	 * end-ds, end-pr, end-proc...
+	 * @param kind String - what's being ended
+	 */
+	public void endGroup(String kind) {
+		start(DECLARE).text("end-").text(kind).end("");
+	}
+
+	/**
+	 * Hand the line as it is to the sink
+	 */
+	public void emit() {
+		sink.line(line);
+		line.setLength(0);
+	}
+
+}
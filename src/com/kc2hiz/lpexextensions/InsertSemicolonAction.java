@@ -0,0 +1,39 @@
+package com.kc2hiz.lpexextensions;
+
+import com.ibm.lpex.core.LpexAction;
+import com.ibm.lpex.core.LpexView;
+
+/**
+ * Semicolon at the end of the line, followed by an empty comment with the
+ * cursor in it
+ * <p>for use as an Lpex User Action.
+ * @author buck
+ * @version 01.00.00 Initial, out of UserProfile
+ *
+ */
+public class InsertSemicolonAction implements LpexAction {
+
+	public InsertSemicolonAction() {
+		// empty constructor
+	}
+
+	@Override
+	public void doAction(LpexView view) {
+		// go to the end of the line
+		view.doAction(view.actionId("contextEnd"));
+		// insert a semicolon and comment string
+		view.doCommand("insertText ; /*  */");
+		// position the cursor in the middle of the comment
+		view.doAction(view.actionId("left"));
+		view.doAction(view.actionId("left"));
+		view.doAction(view.actionId("left"));
+	}
+
+	@Override
+	public boolean available(LpexView view) {
+		// allow the action to run for any visible text line in a
+		// writable document
+		return view.currentElement() != 0 && !view.queryOn("readonly");
+	}
+
+}
@@ -0,0 +1,283 @@
+package com.kc2hiz.lpexextensions;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass classifier for lines of fixed-format RPG source
+ * <p>Each line is looked at once, left to right, and boiled down to one byte:
+ * the lower case spec letter for a spec line, or one of the codes below for
+ * anything else.  The CONTINUED bit is or'ed in when the line ends in ... .
+ * <p>For a whole member, classify(SourceMember) fills a byte array indexed by
+ * element number, so later stages can look a line up instead of scanning 
+ * its text again.
+ * <p>These are the same rules as getSpecFromTextNaive, isComment and 
+ * getComment, without the regular expressions.
+ * <p>Everything from the first ** marker to the end of the member is 
+ * compile time data, however much a table row looks like a spec.  The 
+ * whole-member classify finds the marker once and codes it and every line 
+ * after it DATA without looking at their text.
+ * @author buck
+ *
+ */
+public final class LineClassifier {
+
+	// too short to be a fixed form spec
+	public static final byte SHORT = 1;
+	// * in column 7
+	public static final byte COMMENT_STAR = 2;
+	// // preceded by nothing but blanks
+	public static final byte COMMENT_SLASH = 3;
+	// ** in columns 1-2: start of compile time data
+	public static final byte TABLE = 4;
+	// column 6 is not a spec letter: free form, directive or blank
+	public static final byte FREE = 5;
+	// compile time data: the first ** marker and every line after it
+	// (only classify(SourceMember) can tell)
+	public static final byte DATA = 6;
+	// or'ed in: the line ends in ... (a name continued on the next line)
+	public static final byte CONTINUED = (byte) 0x80;
+	// the code without the CONTINUED bit
+	public static final int KIND = 0x7f;
+
+	// column 6 (0-based 5) to code: spec letters fold to lower case, 
+	// anything else is FREE
+	private static final byte[] SPEC_TABLE = new byte[128];
+	// one String per ASCII character, so getSpecFromTextNaive needn't allocate
+	private static final String[] CHAR_STRINGS = new String[128];
+	// what can follow the ** that starts compile time data, besides a blank
+	private static final String[] DATA_MARKERS = {"CTDATA", "FTRANS", "ALTSEQ"};
+
+	static {
+		for (int c = 0; c < 128; c++) {
+			SPEC_TABLE[c] = FREE;
+			CHAR_STRINGS[c] = String.valueOf((char) c);
+		}
+		for (int c = 'a'; c <= 'z'; c++) {
+			SPEC_TABLE[c] = (byte) c;
+			SPEC_TABLE[Character.toUpperCase(c)] = (byte) c;
+		}
+	}
+
+	private LineClassifier() {
+	}
+
+	/**
+	 * Classify one line
+	 * @param line CharSequence - raw source line
+	 * @return code byte - spec letter or one of the codes, maybe with CONTINUED
+	 */
+	public static byte classify(CharSequence line) {
+		int length = line.length();
+		if (length <= 5) {
+			return isDataMarker(line) ? TABLE : SHORT;
+		}
+		
+		byte code;
+		if (length >= 8 && slashCommentStart(line) >= 0) {
+			code = COMMENT_SLASH;
+		} else if (length >= 8 && line.charAt(6) == '*') {
+			code = COMMENT_STAR;
+		} else if (line.charAt(0) == '*' && line.charAt(1) == '*') {
+			code = TABLE;
+		} else {
+			char c = line.charAt(5);
+			code = c < 128 ? SPEC_TABLE[c] : Character.isLetter(c) ? (byte) 'a' : FREE;
+		}
+		
+		if (line.charAt(length - 1) == '.' && line.charAt(length - 2) == '.' && line.charAt(length - 3) == '.') {
+			code |= CONTINUED;
+		}
+		return code;
+	}
+
+	/**
+	 * Classify every line of a member
+	 * @param member SourceMember
+	 * @return classes byte[] - indexed by element number; [0] is unused
+	 */
+	public static byte[] classify(SourceMember member) {
+		Object event = ConversionStats.begin();
+		int elements = member.elements();
+		byte[] classes = new byte[elements + 1];
+		for (int e = 1; e <= elements; e++) {
+			CharSequence text = member.elementChars(e);
+			if (e == 1 && isFullyFree(text)) {
+				Arrays.fill(classes, 1, elements + 1, FREE);
+				break;
+			}
+			if (isDataMarker(text)) {
+				Arrays.fill(classes, e, elements + 1, DATA);
+				break;
+			}
+			classes[e] = classify(text);
+		}
+		ConversionStats.end(event, ConversionStats.CLASSIFY, 1, elements);
+		return classes;
+	}
+
+	/**
+	 * Where does the compile time data start?
+	 * <p>For the cursor line, where there's no classified member to look in.
+	 * Only columns 1-2 of each line up to the limit are looked at.
+	 * @param member SourceMember
+	 * @param limit int - don't look past this element
+	 * @return element int - the ** marker line, 1 if the member is **FREE,
+	 * or limit + 1 if there's no marker up to the limit
+	 */
+	public static int dataStart(SourceMember member, int limit) {
+		int last = Math.min(limit, member.elements());
+		for (int e = 1; e <= last; e++) {
+			CharSequence text = member.elementChars(e);
+			if (text.length() >= 2 && text.charAt(0) == '*' && text.charAt(1) == '*' &&
+					(isDataMarker(text) || e == 1 && isFullyFree(text))) {
+				return e;
+			}
+		}
+		return limit + 1;
+	}
+
+	/**
+	 * @param line CharSequence - raw source line
+	 * @return true if the line is **, ** followed by a blank, **CTDATA, 
+	 * **FTRANS or **ALTSEQ: the start of compile time data
+	 */
+	public static boolean isDataMarker(CharSequence line) {
+		int length = line.length();
+		if (length < 2 || line.charAt(0) != '*' || line.charAt(1) != '*') {
+			return false;
+		}
+		if (length == 2 || line.charAt(2) == ' ') {
+			return true;
+		}
+		for (String marker : DATA_MARKERS) {
+			if (startsWithIgnoreCase(line, 2, marker)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param line CharSequence - the first line of a member
+	 * @return true for **FREE: the whole member is free form
+	 */
+	public static boolean isFullyFree(CharSequence line) {
+		return line.length() >= 6 && line.charAt(0) == '*' && line.charAt(1) == '*' &&
+				startsWithIgnoreCase(line, 2, "FREE");
+	}
+
+	/**
+	 * @param code byte from classify
+	 * @return true for compile time data; nothing from here on is source
+	 */
+	public static boolean isData(byte code) {
+		return (code & KIND) == DATA;
+	}
+
+	/**
+	 * @param code byte from classify
+	 * @return true for either kind of comment line
+	 */
+	public static boolean isComment(byte code) {
+		int kind = code & KIND;
+		return kind == COMMENT_STAR || kind == COMMENT_SLASH;
+	}
+
+	/**
+	 * @param code byte from classify
+	 * @return true if the line ends in ...
+	 */
+	public static boolean isContinued(byte code) {
+		return (code & CONTINUED) != 0;
+	}
+
+	/**
+	 * @param code byte from classify
+	 * @return spec char - lower case spec letter, or 0 if not a spec line
+	 */
+	public static char spec(byte code) {
+		int kind = code & KIND;
+		return kind >= 'a' && kind <= 'z' ? (char) kind : 0;
+	}
+
+	/**
+	 * Same answer as getSpecFromTextNaive
+	 * @param line String - raw source line
+	 * @return spec String - lower case column 6, * for comments, ? if unknown
+	 */
+	public static String specString(String line) {
+		int kind = classify(line) & KIND;
+		if (kind == SHORT || kind == TABLE) {
+			return "?";
+		}
+		if (kind == COMMENT_STAR || kind == COMMENT_SLASH) {
+			return "*";
+		}
+		char c = Character.toLowerCase(line.charAt(5));
+		return c < 128 ? CHAR_STRINGS[c] : String.valueOf(c);
+	}
+
+	/**
+	 * Where does a // comment start?
+	 * @param line CharSequence - raw source line
+	 * @return index just after the //, or -1 if the line doesn't start 
+	 * with blanks and then //
+	 */
+	public static int slashCommentStart(CharSequence line) {
+		int length = line.length();
+		int i = 0;
+		while (i < length && line.charAt(i) == ' ') {
+			i++;
+		}
+		if (i + 1 < length && line.charAt(i) == '/' && line.charAt(i + 1) == '/') {
+			return i + 2;
+		}
+		return -1;
+	}
+
+	// line has prefix (upper case) at offset, in either case
+	private static boolean startsWithIgnoreCase(CharSequence line, int offset, String prefix) {
+		int length = prefix.length();
+		if (line.length() < offset + length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (Character.toUpperCase(line.charAt(offset + i)) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The text of a comment line: everything after the * in column 7, or 
+	 * after the // up to any further blanks-and-// 
+	 * @param line String - raw source line
+	 * @return comment String - empty if not a comment
+	 */
+	public static String comment(String line) {
+		int kind = classify(line) & KIND;
+		if (kind == COMMENT_STAR) {
+			return line.substring(7);
+		}
+		if (kind != COMMENT_SLASH) {
+			return "";
+		}
+		int start = slashCommentStart(line);
+		int length = line.length();
+		
+		// stop at the blanks in front of the next //, if there is one
+		int end = length;
+		for (int i = start; i + 1 < length; i++) {
+			if (line.charAt(i) == '/' && line.charAt(i + 1) == '/') {
+				end = i;
+				while (end > start && line.charAt(end - 1) == ' ') {
+					end--;
+				}
+				break;
+			}
+		}
+		return line.substring(start, end);
+	}
+
+}
@@ -0,0 +1,31 @@
+package com.kc2hiz.lpexextensions;
+
+import com.ibm.lpex.core.LpexView;
+
+/**
+ * Adapts an LpexView to the SourceMember the conversion engine works on
+ * @author buck
+ *
+ */
+public class LpexSourceMember implements SourceMember {
+
+	private final LpexView view;
+
+	/**
+	 * @param view LpexView the editor view to read from
+	 */
+	public LpexSourceMember(LpexView view) {
+		this.view = view;
+	}
+
+	@Override
+	public int elements() {
+		return view.elements();
+	}
+
+	@Override
+	public String elementText(int element) {
+		return view.elementText(element);
+	}
+
+}
@@ -0,0 +1,300 @@
+package com.kc2hiz.lpexextensions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A source member read straight from a memory-mapped file
+ * <p>The file is mapped once and a table of where each line starts and ends
+ * is built in one pass over it.  Nothing else is read until it's asked for:
+ * elementChars hands out a CharSequence over the mapped bytes without
+ * copying them, which is all LineClassifier and SpecColumns need, and only
+ * elementText makes a String.
+ * <p>Two layouts are understood:
+ * <ul>
+ * <li>fixed-length records, as a source physical file is saved: a 12 byte
+ * prefix (SRCSEQ and SRCDAT, zoned) and then the source, blank padded.  The
+ * prefix is skipped and the padding trimmed off.</li>
+ * <li>lines ending in LF, CR LF or CR, as in a stream file; the same lines
+ * Files.readAllLines would return.</li>
+ * </ul>
+ * Bytes are single byte characters, as BatchConvert reads them, or EBCDIC
+ * in CCSID 37, 273 or 500 as saved from the IBM i.  Either way a byte is
+ * turned into a char with one table lookup, when it's read: the columns
+ * the classifier and SpecColumns look at are decoded straight out of the
+ * mapped file, and the rest only if the line is converted or written out.
+ * <p>The member can be read from several threads at once.
+ * @author buck
+ *
+ */
+public class MappedSourceMember implements SourceMember {
+
+	// SRCSEQ zoned 6,2 and SRCDAT zoned 6,0 ahead of SRCDTA
+	public static final int PREFIX = 12;
+	// a record of a source physical file with the usual 100 byte source area
+	public static final int RECORD_LENGTH = PREFIX + 100;
+
+	// CCSIDs there is a decode table for
+	public static final int LATIN1 = 819;
+	public static final int[] EBCDIC = {37, 273, 500};
+
+	// byte to char, by CCSID; built on first use
+	private static final Map<Integer, char[]> TABLES = new ConcurrentHashMap<Integer, char[]>();
+
+	private final ByteBuffer bytes;
+	private final char[] table;
+	// where each line's text starts and ends in the buffer; [0] is element 1
+	private final int[] starts;
+	private final int[] ends;
+
+	private MappedSourceMember(ByteBuffer bytes, char[] table, int[] starts, int[] ends) {
+		this.bytes = bytes;
+		this.table = table;
+		this.starts = starts;
+		this.ends = ends;
+	}
+
+	/**
+	 * Map a file of fixed-length source records
+	 * @param path Path - the saved member
+	 * @param recordLength int - bytes per record, prefix included; usually RECORD_LENGTH
+	 * @return member MappedSourceMember
+	 * @throws IOException if the file can't be mapped, or isn't whole records
+	 */
+	public static MappedSourceMember records(Path path, int recordLength) throws IOException {
+		return records(path, recordLength, LATIN1);
+	}
+
+	/**
+	 * Map a file of fixed-length source records in a given CCSID
+	 * @param path Path - the saved member
+	 * @param recordLength int - bytes per record, prefix included; usually RECORD_LENGTH
+	 * @param ccsid int - LATIN1 or one of EBCDIC
+	 * @return member MappedSourceMember
+	 * @throws IOException if the file can't be mapped, isn't whole records, 
+	 * or there's no table for the CCSID
+	 */
+	public static MappedSourceMember records(Path path, int recordLength, int ccsid) throws IOException {
+		char[] table = table(ccsid);
+		byte blank = encoded(table, ' ');
+		ByteBuffer bytes = map(path);
+		int size = bytes.limit();
+		if (recordLength <= PREFIX || size % recordLength != 0) {
+			throw new IOException(path + ": " + size + " bytes is not a whole number of " + recordLength + " byte records");
+		}
+
+		int records = size / recordLength;
+		int[] starts = new int[records];
+		int[] ends = new int[records];
+		for (int r = 0; r < records; r++) {
+			int start = r * recordLength + PREFIX;
+			int end = (r + 1) * recordLength;
+			while (end > start && bytes.get(end - 1) == blank) {
+				end--;
+			}
+			starts[r] = start;
+			ends[r] = end;
+		}
+		return new MappedSourceMember(bytes, table, starts, ends);
+	}
+
+	/**
+	 * Map a stream file of lines
+	 * @param path Path - the member as a text file
+	 * @return member MappedSourceMember
+	 * @throws IOException if the file can't be mapped
+	 */
+	public static MappedSourceMember lines(Path path) throws IOException {
+		return lines(path, LATIN1);
+	}
+
+	/**
+	 * Map a stream file of lines in a given CCSID.  In EBCDIC, NL (x'15')
+	 * ends a line as well as LF and CR; the JVM's converters decode it to
+	 * U+0085, not \n, so that's a line end too.
+	 * @param path Path - the member as a text file
+	 * @param ccsid int - LATIN1 or one of EBCDIC
+	 * @return member MappedSourceMember
+	 * @throws IOException if the file can't be mapped, or there's no table for the CCSID
+	 */
+	public static MappedSourceMember lines(Path path, int ccsid) throws IOException {
+		char[] table = table(ccsid);
+		ByteBuffer bytes = map(path);
+		int size = bytes.limit();
+		int[] starts = new int[64];
+		int[] ends = new int[64];
+		int count = 0;
+
+		int start = 0;
+		for (int i = 0; i < size; i++) {
+			char c = table[bytes.get(i) & 0xff];
+			if (c != '\n' && c != '\r' && c != '\u0085') {
+				continue;
+			}
+			if (count == starts.length) {
+				starts = grow(starts);
+				ends = grow(ends);
+			}
+			starts[count] = start;
+			ends[count] = i;
+			count++;
+			if (c == '\r' && i + 1 < size && table[bytes.get(i + 1) & 0xff] == '\n') {
+				i++;
+			}
+			start = i + 1;
+		}
+		// a last line with no line end
+		if (start < size) {
+			if (count == starts.length) {
+				starts = grow(starts);
+				ends = grow(ends);
+			}
+			starts[count] = start;
+			ends[count] = size;
+			count++;
+		}
+
+		int[] s = new int[count];
+		int[] e = new int[count];
+		System.arraycopy(starts, 0, s, 0, count);
+		System.arraycopy(ends, 0, e, 0, count);
+		return new MappedSourceMember(bytes, table, s, e);
+	}
+
+	/**
+	 * The byte to char table for a CCSID, worked out from the JVM's own
+	 * converter the first time it's asked for
+	 * @param ccsid int - LATIN1 or one of EBCDIC
+	 * @return table char[] - 256 chars, indexed by byte value
+	 * @throws IOException if there's no table for the CCSID
+	 */
+	static char[] table(int ccsid) throws IOException {
+		char[] table = TABLES.get(ccsid);
+		if (table != null) {
+			return table;
+		}
+
+		Charset charset;
+		try {
+			switch (ccsid) {
+				case LATIN1:
+					charset = StandardCharsets.ISO_8859_1;
+					break;
+				case 37:
+				case 273:
+				case 500:
+					charset = Charset.forName(String.format("IBM%03d", ccsid));
+					break;
+				default:
+					throw new IOException("no decode table for CCSID " + ccsid);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IOException("this JVM can't decode CCSID " + ccsid, e);
+		}
+
+		byte[] all = new byte[256];
+		for (int b = 0; b < 256; b++) {
+			all[b] = (byte) b;
+		}
+		table = charset.decode(ByteBuffer.wrap(all)).array();
+		table = Arrays.copyOf(table, 256);
+		TABLES.put(ccsid, table);
+		return table;
+	}
+
+	// the byte a table decodes to a char
+	private static byte encoded(char[] table, char c) throws IOException {
+		for (int b = 0; b < 256; b++) {
+			if (table[b] == c) {
+				return (byte) b;
+			}
+		}
+		throw new IOException("no byte for U+" + Integer.toHexString(c));
+	}
+
+	private static ByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(path + ": too big to map");
+			}
+			// the mapping stays good after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+	}
+
+	private static int[] grow(int[] a) {
+		int[] more = new int[a.length * 2];
+		System.arraycopy(a, 0, more, 0, a.length);
+		return more;
+	}
+
+	@Override
+	public int elements() {
+		return starts.length;
+	}
+
+	@Override
+	public String elementText(int element) {
+		int start = starts[element - 1];
+		char[] text = new char[ends[element - 1] - start];
+		for (int i = 0; i < text.length; i++) {
+			text[i] = table[bytes.get(start + i) & 0xff];
+		}
+		return new String(text);
+	}
+
+	@Override
+	public CharSequence elementChars(int element) {
+		return new Slice(starts[element - 1], ends[element - 1]);
+	}
+
+	/**
+	 * Part of the mapped file, read in place
+	 */
+	private final class Slice implements CharSequence {
+		private final int start;
+		private final int end;
+
+		Slice(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= end - start) {
+				throw new IndexOutOfBoundsException("index " + index + ", length " + (end - start));
+			}
+			return table[bytes.get(start + index) & 0xff];
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return new Slice(start + from, start + to);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder(length());
+			for (int i = start; i < end; i++) {
+				text.append(table[bytes.get(i) & 0xff]);
+			}
+			return text.toString();
+		}
+	}
+
+}
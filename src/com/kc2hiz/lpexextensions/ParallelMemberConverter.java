@@ -0,0 +1,186 @@
+package com.kc2hiz.lpexextensions;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Convert one large member on several threads
+ * <p>The member is cut into pieces at top-level structures: a DS, PR or PI,
+ * or the B-spec that begins a procedure.  Nothing the forward pass carries
+ * from line to line crosses those lines in valid source: subfields and
+ * parameters stop at the next structure, long names are picked up again by
+ * ContinuationIndex, and calculations come after the D-specs they go with.
+ * Each piece is converted with getMemberAsFree's own pass on a fork-join
+ * pool, and the blocks are put back together in element order.
+ * <p>The output is the same as converting the member in one pass.  If a
+ * piece ends with an IF/DO group still open, or a block runs past the start
+ * of the next piece, the member is converted again in one pass instead.
+ * <p>The member must not change while it is converted; use an
+ * ArraySourceMember, not a view.
+ * @author buck
+ *
+ */
+public class ParallelMemberConverter {
+
+	// pieces are at least this many lines, so each task is worth forking
+	static final int MIN_PIECE = 2000;
+
+	private final FixedToFreeConverter converter;
+	private final ForkJoinPool pool;
+	private final int minPiece;
+
+	/**
+	 * Run on the common pool, or the pool of the calling task
+	 * @param converter FixedToFreeConverter - does the converting
+	 */
+	public ParallelMemberConverter(FixedToFreeConverter converter) {
+		this(converter, ForkJoinPool.commonPool(), MIN_PIECE);
+	}
+
+	/**
+	 * @param converter FixedToFreeConverter - does the converting
+	 * @param pool ForkJoinPool - used unless called from a task already in a pool
+	 * @param minPiece int - smallest piece, in lines
+	 */
+	public ParallelMemberConverter(FixedToFreeConverter converter, ForkJoinPool pool, int minPiece) {
+		this.converter = converter;
+		this.pool = pool;
+		this.minPiece = minPiece;
+	}
+
+	/**
+	 * Same blocks as FixedToFreeConverter.getMemberAsFree
+	 * @param member SourceMember - the member we're working on
+	 * @return blocks ArrayList - one per converted spec/structure, in element order
+	 */
+	public ArrayList<ConvertedBlock> getMemberAsFree(SourceMember member) {
+		return getMemberAsFree(member, LineClassifier.classify(member));
+	}
+
+	/**
+	 * Same blocks as FixedToFreeConverter.getMemberAsFree, for a classified member
+	 * @param member SourceMember - the member we're working on
+	 * @param classes byte[] - LineClassifier codes, indexed by element number
+	 * @return blocks ArrayList - one per converted spec/structure, in element order
+	 */
+	public ArrayList<ConvertedBlock> getMemberAsFree(SourceMember member, byte[] classes) {
+		int[] starts = pieces(member, classes);
+		if (starts.length <= 2) {
+			return converter.getMemberAsFree(member, classes);
+		}
+
+		// one set of C-spec names for the whole member, gathered by whichever piece needs it first
+		CSpecConverter names = new CSpecConverter(converter, member, classes);
+		ConvertPiece task = new ConvertPiece(member, classes, starts, names, 0, starts.length - 1);
+		Piece[] pieces = ForkJoinTask.inForkJoinPool() ? task.invoke() : pool.invoke(task);
+
+		ArrayList<ConvertedBlock> blocks = new ArrayList<ConvertedBlock>();
+		for (int p = 0; p < pieces.length; p++) {
+			Piece piece = pieces[p];
+			boolean last = p == pieces.length - 1;
+			if (!last && !piece.groupsClosed) {
+				return converter.getMemberAsFree(member, classes);
+			}
+			if (!last && !piece.blocks.isEmpty() &&
+					piece.blocks.get(piece.blocks.size() - 1).lastElement >= starts[p + 1]) {
+				return converter.getMemberAsFree(member, classes);
+			}
+			blocks.addAll(piece.blocks);
+		}
+		return blocks;
+	}
+
+	/**
+	 * Where to cut the member
+	 * @param member SourceMember - the member we're working on
+	 * @param classes byte[] - LineClassifier codes, indexed by element number
+	 * @return starts int[] - first element of each piece, then elements + 1
+	 */
+	int[] pieces(SourceMember member, byte[] classes) {
+		int elements = member.elements();
+		SpecColumns cols = new SpecColumns();
+		int[] starts = new int[16];
+		int count = 0;
+		starts[count++] = 1;
+
+		for (int e = 1 + minPiece; e <= elements; e++) {
+			byte code = classes[e];
+			if (LineClassifier.isData(code)) {
+				break;
+			}
+			char spec = LineClassifier.spec(code);
+			if (LineClassifier.isContinued(code) || spec != 'd' && spec != 'p') {
+				continue;
+			}
+			cols.reset(member.elementChars(e));
+			boolean top = spec == 'p' ? cols.isDefType("b") :
+					cols.isDefType("ds") || cols.isDefType("pr") || cols.isDefType("pi");
+			if (!top || e - starts[count - 1] < minPiece) {
+				continue;
+			}
+			if (count + 1 == starts.length) {
+				int[] more = new int[starts.length * 2];
+				System.arraycopy(starts, 0, more, 0, count);
+				starts = more;
+			}
+			starts[count++] = e;
+		}
+		starts[count++] = elements + 1;
+
+		int[] result = new int[count];
+		System.arraycopy(starts, 0, result, 0, count);
+		return result;
+	}
+
+	// the blocks from one piece, and whether it left calculations open
+	static class Piece {
+		final ArrayList<ConvertedBlock> blocks = new ArrayList<ConvertedBlock>();
+		boolean groupsClosed;
+	}
+
+	/**
+	 * Splits the pieces in half until there is one left to convert
+	 */
+	class ConvertPiece extends RecursiveTask<Piece[]> {
+		private static final long serialVersionUID = 1L;
+		private final SourceMember member;
+		private final byte[] classes;
+		private final int[] starts;
+		private final CSpecConverter names;
+		private final int from;
+		private final int to;
+
+		ConvertPiece(SourceMember member, byte[] classes, int[] starts, CSpecConverter names, int from, int to) {
+			this.member = member;
+			this.classes = classes;
+			this.starts = starts;
+			this.names = names;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Piece[] compute() {
+			if (to - from == 1) {
+				Piece piece = new Piece();
+				piece.groupsClosed = converter.convertRange(member, classes,
+						starts[from], starts[to] - 1, names, piece.blocks);
+				return new Piece[] {piece};
+			}
+			int mid = (from + to) >>> 1;
+			ConvertPiece left = new ConvertPiece(member, classes, starts, names, from, mid);
+			ConvertPiece right = new ConvertPiece(member, classes, starts, names, mid, to);
+			invokeAll(left, right);
+
+			Piece[] l = left.join();
+			Piece[] r = right.join();
+			Piece[] both = new Piece[l.length + r.length];
+			System.arraycopy(l, 0, both, 0, l.length);
+			System.arraycopy(r, 0, both, l.length, r.length);
+			return both;
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.kc2hiz.lpexextensions;
+
+import com.ibm.lpex.core.LpexAction;
+import com.ibm.lpex.core.LpexView;
+
+/**
+ * Show the free-form code ConvertFixedToFreeAction would generate for the
+ * cursor line, without changing anything
+ * <p>The conversion comes from ConversionPreview, so it is only available 
+ * once the background conversion for the cursor line has finished.
+ * <p>for use as an Lpex User Action.
+ * @author buck
+ * @version 01.00.00 Initial
+ * @version 01.00.01 Check for compile time data here; the preview only sees the structure
+ * @version 01.00.02 The first use in a view installs the preview
+ *
+ */
+public class PreviewFixedToFreeAction implements LpexAction {
+
+	public PreviewFixedToFreeAction() {
+		// empty constructor
+	}
+
+	/**
+	 * Only available when there is a conversion ready for the cursor line,
+	 * or the first time in a view, so it can start the preview
+	 * @param view LpexView to operate on
+	 * @return true if action is available for this view
+	 * @see com.ibm.lpex.core.LpexAction#available(com.ibm.lpex.core.LpexView)
+	 */
+	@Override
+	public boolean available(LpexView view) {
+		return view.currentElement() > 0 &&
+				(!ConversionPreview.installed(view) ||
+				ConversionPreview.ready(view, view.currentElement()) != null);
+	}
+
+	/**
+	 * Put the preview in the message line
+	 * @param view LpexView to operate on
+	 * @see com.ibm.lpex.core.LpexAction#doAction(com.ibm.lpex.core.LpexView)
+	 */
+	@Override
+	public void doAction(LpexView view) {
+		ConvertedBlock block = ConversionPreview.ready(view, view.currentElement());
+		if (block == null && !ConversionPreview.installed(view)) {
+			ConversionPreview.request(view);
+			view.doCommand("set messageText Working out the conversion; try again in a moment");
+			return;
+		}
+		if (block == null || block.lines.isEmpty()) {
+			view.doCommand("set messageText No conversion ready");
+			return;
+		}
+
+		// a table row can look just like a spec
+		if (DataStart.forView(view) <= view.currentElement()) {
+			view.doCommand("set messageText Compile time data");
+			return;
+		}
+		
+		StringBuilder preview = new StringBuilder();
+		for (String dsLine: block.lines) {
+			preview.append(dsLine.trim()).append(" ");
+		}
+		view.doCommand("set messageText " + block.lines.size() + " lines: " + preview.toString().trim());
+	}
+
+}
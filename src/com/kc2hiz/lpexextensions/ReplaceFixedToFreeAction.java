@@ -0,0 +1,41 @@
+package com.kc2hiz.lpexextensions;
+
+/**
+ * Convert Fixed-specification to fully free format, in place
+ * <p>Same conversion as {@link ConvertFixedToFreeAction}, for the cursor line
+ * or a marked block, but the free-form lines take the place of the fixed-form
+ * lines instead of going in after them.  Optionally the fixed-form lines are
+ * kept as // comments ahead of the free form, for review.
+ * <p>for use as an Lpex User Action.
+ * @author buck
+ * @version 01.00.00 Initial
+ *
+ */
+public class ReplaceFixedToFreeAction extends ConvertFixedToFreeAction {
+
+	/**
+	 * Replace the fixed-form lines, keeping them as comments
+	 */
+	public ReplaceFixedToFreeAction() {
+		this(true);
+	}
+
+	/**
+	 * @param keepOriginals boolean - true to keep the fixed-form lines as // comments
+	 */
+	public ReplaceFixedToFreeAction(boolean keepOriginals) {
+		this.replace = true;
+		this.keepOriginals = keepOriginals;
+	}
+
+	/**
+	 * Replace the fixed-form lines and don't keep them
+	 * <p>A class of its own so it can be named in a user action definition.
+	 */
+	public static class Drop extends ReplaceFixedToFreeAction {
+		public Drop() {
+			super(false);
+		}
+	}
+
+}
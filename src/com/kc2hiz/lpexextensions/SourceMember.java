@@ -0,0 +1,37 @@
+package com.kc2hiz.lpexextensions;
+
+/**
+ * The lines of a source member, numbered the way Lpex numbers elements:
+ * the first line is element 1.
+ * <p>This is all the conversion engine needs to know about where the source
+ * came from.  LpexSourceMember wraps an editor view; ArraySourceMember wraps
+ * lines already in memory; MappedSourceMember reads a file in place.
+ * @author buck
+ *
+ */
+public interface SourceMember {
+
+	/**
+	 * @return number of lines in the member
+	 */
+	int elements();
+
+	/**
+	 * @param element int 1-based line number
+	 * @return the text of the line
+	 */
+	String elementText(int element);
+
+	/**
+	 * The text of a line for looking at, not keeping: a member that can 
+	 * hand out its text without copying it does.  LineClassifier and
+	 * SpecColumns take a CharSequence, so only lines that are converted
+	 * need to become Strings.
+	 * @param element int 1-based line number
+	 * @return the text of the line
+	 */
+	default CharSequence elementChars(int element) {
+		return elementText(element);
+	}
+
+}
@@ -0,0 +1,183 @@
+package com.kc2hiz.lpexextensions;
+
+import com.ibm.lpex.core.LpexDocumentListener;
+import com.ibm.lpex.core.LpexView;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A small least-recently-used cache, one per view, of structures that have
+ * already been converted
+ * <p>Converting, undoing and converting again is a common way to review a 
+ * conversion.  The second time round the structure hasn't changed, so the 
+ * parse can be skipped.
+ * <p>Entries are keyed on the element the structure starts on plus a hash of 
+ * that line's text.  Each entry also carries a hash of every line it was 
+ * built from (including a long name continued from lines above) and of
+ * the line that ended it, which is checked against the view before the
+ * entry is used; a subfield added under a DS changes that line.  Lpex
+ * document change notifications throw out entries at or below a change,
+ * since their element numbers may have moved.
+ * <p>Calculations are not cached: a C-spec's conversion depends on KLISTs
+ * and field definitions anywhere in the member, which no range hash covers.
+ * @author buck
+ *
+ */
+public class SpecCache implements LpexDocumentListener {
+
+	// how many structures to remember per view
+	static final int MAX_ENTRIES = 256;
+
+	private static final Map<LpexView, SpecCache> caches = new WeakHashMap<LpexView, SpecCache>();
+
+	private final FixedToFreeConverter classifier = new FixedToFreeConverter();
+
+	// access ordered, so the eldest entry is the least recently used
+	private final LinkedHashMap<Key, Cached> entries = new LinkedHashMap<Key, Cached>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * Element number plus a hash of its text
+	 */
+	static final class Key {
+		final int element;
+		final int textHash;
+
+		Key(int element, int textHash) {
+			this.element = element;
+			this.textHash = textHash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return element == k.element && textHash == k.textHash;
+		}
+
+		@Override
+		public int hashCode() {
+			return element * 31 + textHash;
+		}
+	}
+
+	/**
+	 * A converted block and a hash of the lines it came from
+	 */
+	static final class Cached {
+		final int hashFrom;
+		final int hashTo;
+		final int rangeHash;
+		final ConvertedBlock block;
+
+		Cached(int hashFrom, int hashTo, int rangeHash, ConvertedBlock block) {
+			this.hashFrom = hashFrom;
+			this.hashTo = hashTo;
+			this.rangeHash = rangeHash;
+			this.block = block;
+		}
+	}
+
+	private SpecCache() {
+	}
+
+	/**
+	 * Get the cache for a view, making it if need be
+	 * @param view LpexView
+	 * @return cache SpecCache
+	 */
+	public static SpecCache forView(LpexView view) {
+		synchronized (caches) {
+			SpecCache cache = caches.get(view);
+			if (cache == null) {
+				cache = new SpecCache();
+				caches.put(view, cache);
+				view.addLpexDocumentListener(cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Look up the conversion for the structure starting on an element
+	 * @param member SourceMember - the view's text
+	 * @param element int - first element of the structure
+	 * @return block ConvertedBlock - or null if not cached or the text has changed
+	 */
+	public ConvertedBlock get(SourceMember member, int element) {
+		Key key = new Key(element, member.elementText(element).hashCode());
+		Cached entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.hashTo > member.elements() ||
+				hashRange(member, entry.hashFrom, entry.hashTo) != entry.rangeHash) {
+			entries.remove(key);
+			return null;
+		}
+		return entry.block;
+	}
+
+	/**
+	 * Remember a conversion.  Call this before the lines are inserted.
+	 * @param member SourceMember - the view's text
+	 * @param block ConvertedBlock - the conversion
+	 */
+	public void put(SourceMember member, ConvertedBlock block) {
+		String first = member.elementText(block.firstElement);
+		if (classifier.getSpecFromTextNaive(first).equals("c")) {
+			return;
+		}
+		// a long name may start on the lines above
+		int hashFrom = block.firstElement;
+		while (hashFrom > 1) {
+			String prior = member.elementText(hashFrom - 1);
+			if (!prior.endsWith("...") && !classifier.isComment(prior)) {
+				break;
+			}
+			hashFrom--;
+		}
+		// and ends on the first line after it that isn't a comment,
+		// which would have been part of it if it were a subfield
+		int hashTo = Math.min(block.lastElement + 1, member.elements());
+		while (hashTo < member.elements() && classifier.isComment(member.elementText(hashTo))) {
+			hashTo++;
+		}
+		Key key = new Key(block.firstElement, first.hashCode());
+		entries.put(key, new Cached(hashFrom, hashTo, hashRange(member, hashFrom, hashTo), block));
+	}
+
+	/**
+	 * Something changed; anything at or below it may have moved or changed
+	 * @see com.ibm.lpex.core.LpexDocumentListener#documentChanged(com.ibm.lpex.core.LpexView, int, int, int)
+	 */
+	@Override
+	public void documentChanged(LpexView view, int type, int element, int parm) {
+		Iterator<Cached> i = entries.values().iterator();
+		while (i.hasNext()) {
+			if (i.next().block.lastElement >= element) {
+				i.remove();
+			}
+		}
+	}
+
+	private static int hashRange(SourceMember member, int from, int to) {
+		int hash = 1;
+		for (int e = from; e <= to; e++) {
+			hash = hash * 31 + member.elementText(e).hashCode();
+		}
+		return hash;
+	}
+
+}
@@ -0,0 +1,446 @@
+package com.kc2hiz.lpexextensions;
+
+/**
+ * A reusable, column-oriented view of one fixed-form D-, P- or H-spec
+ * <p>Nothing is copied when a line is loaded: this only remembers the
+ * CharSequence and answers questions about its columns.  Lengths, positions 
+ * and decimals come back as ints; Strings are built only for the parts that
+ * go into the generated free-form code.  One instance is reused for every line 
+ * of a conversion, so it is not thread safe.
+ * <p>Columns are the same as DSpec; offsets here are 0-based and end-exclusive,
+ * the way substring counts them.
+ * @author buck
+ *
+ */
+public final class SpecColumns {
+
+	// value for a numeric column that is blank
+	public static final int NONE = -1;
+	// value for a numeric column that isn't a plain number
+	public static final int INVALID = -2;
+
+	static final int SPEC = 5;
+	static final int NAME = 6, NAME_END = 21;
+	static final int DEF_TYPE = 23, DEF_TYPE_END = 25;
+	static final int FROM = 25, FROM_END = 32;
+	static final int LEN = 32, LEN_END = 39;
+	static final int DATA_TYPE = 39;
+	static final int DECIMALS = 40, DECIMALS_END = 42;
+	static final int KEYWORDS = 43, KEYWORDS_END = 80;
+	static final int H_KEYWORDS = 7;
+	static final int COMMENT = 80, COMMENT_END = 100;
+
+	// F-spec columns; keywords and comment are where they are on a D-spec
+	static final int FILE_NAME = 6, FILE_NAME_END = 16;
+	static final int FILE_TYPE = 16;
+	static final int FILE_DESIGNATION = 17;
+	static final int END_OF_FILE = 18;
+	static final int FILE_ADDITION = 19;
+	static final int SEQUENCE = 20;
+	static final int FILE_FORMAT = 21;
+	static final int RECORD_LENGTH = 22, RECORD_LENGTH_END = 27;
+	static final int LIMITS = 27;
+	static final int KEY_LENGTH = 28, KEY_LENGTH_END = 33;
+	static final int RECORD_ADDRESS_TYPE = 33;
+	static final int FILE_ORGANIZATION = 34;
+	static final int DEVICE = 35, DEVICE_END = 42;
+
+	// C-spec columns
+	static final int CONTROL_LEVEL = 6, CONTROL_LEVEL_END = 8;
+	static final int CONDITION_NOT = 8;
+	static final int CONDITION = 9, CONDITION_END = 11;
+	static final int FACTOR1 = 11, FACTOR1_END = 25;
+	static final int OPCODE = 25, OPCODE_END = 35;
+	static final int FACTOR2 = 35, FACTOR2_END = 49;
+	static final int RESULT = 49, RESULT_END = 63;
+	static final int FIELD_LEN = 63, FIELD_LEN_END = 68;
+	static final int FIELD_DECIMALS = 68, FIELD_DECIMALS_END = 70;
+	static final int HI = 70, LO = 72, EQ = 74, INDICATORS_END = 76;
+	static final int EXT_FACTOR2 = 35, EXT_FACTOR2_END = 80;
+
+	private CharSequence text = "";
+	private int length = 0;
+
+	/**
+	 * Point the view at another line
+	 * @param text CharSequence - raw source line
+	 * @return this, for chaining
+	 */
+	public SpecColumns reset(CharSequence text) {
+		this.text = text;
+		this.length = text.length();
+		return this;
+	}
+
+	/**
+	 * @return text CharSequence - the line being looked at
+	 */
+	public CharSequence text() {
+		return text;
+	}
+
+	/**
+	 * @return length int - length of the line being looked at
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Spec type from column 6 without the comment checks getSpecFromTextNaive does
+	 * @return lower case spec letter, '?' for a compile time table marker, 
+	 * or 0 if the line is too short
+	 */
+	public char spec() {
+		if (length <= SPEC) {
+			return 0;
+		}
+		if (text.charAt(0) == '*' && text.charAt(1) == '*') {
+			return '?';
+		}
+		return Character.toLowerCase(text.charAt(SPEC));
+	}
+
+	/**
+	 * Is the definition type exactly two blanks?  
+	 * Lines too short to reach column 25 are not.
+	 * @return true for a subfield or parameter line
+	 */
+	public boolean isDefTypeBlank() {
+		return length >= DEF_TYPE_END &&
+				text.charAt(DEF_TYPE) == ' ' && text.charAt(DEF_TYPE + 1) == ' ';
+	}
+
+	/**
+	 * Compare the trimmed definition type, ignoring case
+	 * @param defType String - lower case definition type (s, c, ds, pi...)
+	 * @return true if the trimmed definition type matches
+	 */
+	public boolean isDefType(String defType) {
+		if (length <= DEF_TYPE) {
+			return false;
+		}
+		int end = length < DEF_TYPE_END ? length : DEF_TYPE_END;
+		int start = trimStart(DEF_TYPE, end);
+		end = trimEnd(start, end);
+		if (end - start != defType.length()) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (Character.toLowerCase(text.charAt(i)) != defType.charAt(i - start)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return From position, NONE if blank or INVALID if not a number
+	 */
+	public int fromPos() {
+		if (length < FROM_END) {
+			return NONE;
+		}
+		return parseInt(FROM, FROM_END);
+	}
+
+	/**
+	 * @return Length / To position, NONE if blank or INVALID if not a number.
+	 * A length adjustment (+n) is INVALID here; see hasLenAdjustment
+	 */
+	public int len() {
+		if (length < LEN_END) {
+			return NONE;
+		}
+		return parseInt(LEN, LEN_END);
+	}
+
+	/**
+	 * @return true if the length column is an adjustment to a LIKE (+n)
+	 */
+	public boolean hasLenAdjustment() {
+		if (length < LEN_END) {
+			return false;
+		}
+		for (int i = LEN; i < LEN_END; i++) {
+			if (text.charAt(i) == '+') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return data type, lower case, or blank
+	 */
+	public char dataType() {
+		if (length <= DATA_TYPE) {
+			return ' ';
+		}
+		return Character.toLowerCase(text.charAt(DATA_TYPE));
+	}
+
+	/**
+	 * @return decimal positions, NONE if blank or INVALID if not a number
+	 */
+	public int decimals() {
+		if (length < DECIMALS_END) {
+			return NONE;
+		}
+		return parseInt(DECIMALS, DECIMALS_END);
+	}
+
+	/**
+	 * @return true if the line ends with ... and so carries on to the next line
+	 */
+	public boolean isContinued() {
+		return length >= 3 && text.charAt(length - 1) == '.' &&
+				text.charAt(length - 2) == '.' && text.charAt(length - 3) == '.';
+	}
+
+	/**
+	 * One column, for the single character F-spec entries 
+	 * (file type, designation, addition, format, ...)
+	 * @param column int - 0-based offset, one of the F-spec constants
+	 * @return the column, lower case, or blank if the line is too short
+	 */
+	public char column(int column) {
+		if (length <= column) {
+			return ' ';
+		}
+		return Character.toLowerCase(text.charAt(column));
+	}
+
+	/**
+	 * Are columns 7-43 blank?  On an F-spec that makes it a continuation 
+	 * line that only carries more keywords.
+	 * @return true if there's nothing between the spec letter and the keywords
+	 */
+	public boolean isFileContinuation() {
+		int end = length < KEYWORDS ? length : KEYWORDS;
+		return trimStart(FILE_NAME, end) == end;
+	}
+
+	/**
+	 * @return F-spec record length, NONE if blank or INVALID if not a number
+	 */
+	public int recordLength() {
+		if (length < RECORD_LENGTH_END) {
+			return NONE;
+		}
+		return parseInt(RECORD_LENGTH, RECORD_LENGTH_END);
+	}
+
+	/**
+	 * @return F-spec key length, NONE if blank or INVALID if not a number
+	 */
+	public int keyLength() {
+		if (length < KEY_LENGTH_END) {
+			return NONE;
+		}
+		return parseInt(KEY_LENGTH, KEY_LENGTH_END);
+	}
+
+	/**
+	 * Are these columns blank (or past the end of the line)?
+	 * @param start int - 0-based offset
+	 * @param end int - 0-based offset, exclusive
+	 * @return true if there's nothing but blanks there
+	 */
+	public boolean isBlank(int start, int end) {
+		if (end > length) {
+			end = length;
+		}
+		return start >= end || trimStart(start, end) == end;
+	}
+
+	/**
+	 * @param start int - 0-based offset
+	 * @param end int - 0-based offset, exclusive
+	 * @return the columns as a number, NONE if blank or INVALID if not a number
+	 */
+	public int number(int start, int end) {
+		if (end > length) {
+			end = length;
+		}
+		if (start >= end) {
+			return NONE;
+		}
+		return parseInt(start, end);
+	}
+
+	// ==========================================================
+	// Strings, built only when they are needed for output
+
+	/**
+	 * Any columns, trimmed, case kept; for names, factors and expressions
+	 * @param start int - 0-based offset
+	 * @param end int - 0-based offset, exclusive
+	 * @return text String - empty if blank or past the end of the line
+	 */
+	public String trimmed(int start, int end) {
+		if (end > length) {
+			end = length;
+		}
+		if (start >= end) {
+			return "";
+		}
+		start = trimStart(start, end);
+		return text.subSequence(start, trimEnd(start, end)).toString();
+	}
+
+	/**
+	 * Any columns, trimmed and lower case; for opcodes and indicators
+	 * @param start int - 0-based offset
+	 * @param end int - 0-based offset, exclusive
+	 * @return text String - empty if blank or past the end of the line
+	 */
+	public String lower(int start, int end) {
+		if (end > length) {
+			end = length;
+		}
+		if (start >= end) {
+			return "";
+		}
+		return lowerTrimmed(start, end);
+	}
+
+	/**
+	 * @return fileName String - F-spec file name, trimmed; case is kept like D-spec names
+	 */
+	public String fileName() {
+		if (length <= FILE_NAME) {
+			return "";
+		}
+		int end = length < FILE_NAME_END ? length : FILE_NAME_END;
+		int start = trimStart(FILE_NAME, end);
+		return text.subSequence(start, trimEnd(start, end)).toString();
+	}
+
+	/**
+	 * @return device String - F-spec device, trimmed and lower case
+	 */
+	public String deviceText() {
+		if (length <= DEVICE) {
+			return "";
+		}
+		return lowerTrimmed(DEVICE, length < DEVICE_END ? length : DEVICE_END);
+	}
+
+	/**
+	 * @return fromPos String - From column, trimmed and lower case
+	 */
+	public String fromPosText() {
+		if (length < FROM_END) {
+			return "";
+		}
+		return lowerTrimmed(FROM, FROM_END);
+	}
+
+	/**
+	 * @return len String - Length / To column, trimmed and lower case
+	 */
+	public String lenText() {
+		if (length < LEN_END) {
+			return "";
+		}
+		return lowerTrimmed(LEN, LEN_END);
+	}
+
+	/**
+	 * @return dataType String - data type column, trimmed and lower case
+	 */
+	public String dataTypeText() {
+		if (length <= DATA_TYPE) {
+			return "";
+		}
+		return lowerTrimmed(DATA_TYPE, DATA_TYPE + 1);
+	}
+
+	/**
+	 * @return decimals String - decimals column, trimmed and lower case
+	 */
+	public String decimalsText() {
+		if (length < DECIMALS_END) {
+			return "";
+		}
+		return lowerTrimmed(DECIMALS, DECIMALS_END);
+	}
+
+	/**
+	 * @return keywords String - D-spec keywords, trimmed and lower case
+	 */
+	public String keywords() {
+		if (length <= KEYWORDS) {
+			return "";
+		}
+		return lowerTrimmed(KEYWORDS, length < KEYWORDS_END ? length : KEYWORDS_END);
+	}
+
+	/**
+	 * @return keywords String - H-spec keywords, trimmed and lower case
+	 */
+	public String hKeywords() {
+		if (length <= H_KEYWORDS) {
+			return "";
+		}
+		return lowerTrimmed(H_KEYWORDS, length < KEYWORDS_END ? length : KEYWORDS_END);
+	}
+
+	/**
+	 * @return rhComment String - right hand comment, trimmed
+	 */
+	public String rhComment() {
+		if (length <= COMMENT + 1) {
+			return "";
+		}
+		int end = length < COMMENT_END ? length : COMMENT_END;
+		int start = trimStart(COMMENT, end);
+		return text.subSequence(start, trimEnd(start, end)).toString();
+	}
+
+	// ==========================================================
+	// column helpers
+
+	private int trimStart(int start, int end) {
+		while (start < end && text.charAt(start) <= ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	private int trimEnd(int start, int end) {
+		while (end > start && text.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	private String lowerTrimmed(int start, int end) {
+		start = trimStart(start, end);
+		end = trimEnd(start, end);
+		StringBuilder sb = new StringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			sb.append(Character.toLowerCase(text.charAt(i)));
+		}
+		return sb.toString();
+	}
+
+	private int parseInt(int start, int end) {
+		start = trimStart(start, end);
+		end = trimEnd(start, end);
+		if (start == end) {
+			return NONE;
+		}
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9' || value > 99999999) {
+				return INVALID;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,31 @@
+package com.kc2hiz.lpexextensions;
+
+import com.ibm.lpex.core.LpexAction;
+import com.ibm.lpex.core.LpexView;
+
+/**
+ * Switch debug tracing on and off without restarting
+ * <p>for use as an Lpex User Action.
+ * @author buck
+ * @version 01.00.00 Initial, out of UserProfile
+ *
+ */
+public class ToggleTraceAction implements LpexAction {
+
+	public ToggleTraceAction() {
+		// empty constructor
+	}
+
+	@Override
+	public void doAction(LpexView view) {
+		boolean on = !Trace.enabled();
+		Trace.setEnabled(on);
+		view.doCommand("set messageText Tracing " + (on ? "on" : "off"));
+	}
+
+	@Override
+	public boolean available(LpexView view) {
+		return true;
+	}
+
+}
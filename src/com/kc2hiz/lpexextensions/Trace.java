@@ -0,0 +1,78 @@
+package com.kc2hiz.lpexextensions;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.Configurator;
+
+/**
+ * Debug tracing for the plug-in
+ * <p>Log4J is set up once, when the bundle starts, instead of on every action.
+ * Callers check enabled() before building a message, so with tracing off
+ * nothing is concatenated or allocated:
+ * <pre>
+ * if (Trace.enabled()) {
+ *     Trace.trace("keywords=" + keywords);
+ * }
+ * </pre>
+ * <p>Tracing can be switched on and off while the editor is running, with
+ * the toggleTraceAction or setEnabled().
+ * @author buck
+ *
+ */
+public final class Trace {
+
+	// where the Log4J configuration lives unless -Dlog4j.configurationFile says otherwise
+	static final String CONFIGURATION_FILE = "c:/buck/lpexextensions_log4j.xml";
+	// all of our tracing goes to this logger
+	static final String LOGGER_NAME = Activator.PLUGIN_ID;
+
+	// null until init(); tracing is off until then
+	private static volatile Logger logger = null;
+
+	private Trace() {
+	}
+
+	/**
+	 * Set up Log4J.  Called once from Activator.start; calling it again does nothing.
+	 */
+	public static synchronized void init() {
+		if (logger != null) {
+			return;
+		}
+		if (System.getProperty("log4j.configurationFile") == null) {
+			System.setProperty("log4j.configurationFile", CONFIGURATION_FILE);
+		}
+		logger = LogManager.getLogger(LOGGER_NAME);
+		logger.debug("Log config file:" + System.getProperty("log4j.configurationFile"));
+	}
+
+	/**
+	 * @return true if trace messages will go anywhere.  Check this before building one.
+	 */
+	public static boolean enabled() {
+		Logger l = logger;
+		return l != null && l.isTraceEnabled();
+	}
+
+	/**
+	 * Write a trace message.  Only build the message if enabled() said yes.
+	 * @param message String
+	 */
+	public static void trace(String message) {
+		Logger l = logger;
+		if (l != null) {
+			l.trace(message);
+		}
+	}
+
+	/**
+	 * Switch tracing on or off at run time, for debugging in production
+	 * @param on boolean - true for TRACE, false back to INFO
+	 */
+	public static void setEnabled(boolean on) {
+		init();
+		Configurator.setLevel(LOGGER_NAME, on ? Level.TRACE : Level.INFO);
+	}
+
+}
@@ -1,43 +1,59 @@
 package com.kc2hiz.lpexextensions;
 
 import com.ibm.lpex.core.LpexView;
-import com.ibm.lpex.core.LpexAction;
 import com.ibm.lpex.core.LpexViewAdapter;
+import com.ibm.lpex.core.LpexViewListener;
+
+import java.util.Map;
+import java.util.WeakHashMap;
 
 public class UserProfile {
 
+    // user actions by class name; Lpex loads and creates each one the first time it's needed,
+    // so opening a view only costs a set command per action.  The names are literals:
+    // X.class.getName() would load every action class while the profile runs
+    static final String[][] ACTIONS = {
+        // semicolon at EOL and comment
+        {"insertSemicolon2Action", "com.kc2hiz.lpexextensions.InsertSemicolonAction"},
+        {"previewFixedToFreeAction", "com.kc2hiz.lpexextensions.PreviewFixedToFreeAction"},
+        // convert in place: with the fixed-form lines kept as comments, or gone
+        {"replaceFixedToFreeAction", "com.kc2hiz.lpexextensions.ReplaceFixedToFreeAction"},
+        {"replaceFixedToFreeDropAction", "com.kc2hiz.lpexextensions.ReplaceFixedToFreeAction$Drop"},
+        // switch debug tracing on and off without restarting
+        {"toggleTraceAction", "com.kc2hiz.lpexextensions.ToggleTraceAction"},
+        // show how much has been converted, and how much refused
+        {"conversionStatsAction", "com.kc2hiz.lpexextensions.ConversionStatsAction"},
+    };
+
+    // register a listener for when the view is shown; it keeps no state, so one does for every view
+    // https://www.ibm.com/support/knowledgecenter/SSAE4W_9.6.0/com.ibm.lpex.doc.isv/api/com/ibm/lpex/core/LpexViewAdapter.html
+    static final LpexViewListener SHOWN = new LpexViewAdapter() {
+        // called after the updateProfile command has completed
+        public void shown(LpexView view) {
+            handleShown(view);
+        }
+    };
+
+    // with tracing on, when each view's profile started, to time how long until it can be typed in
+    private static final Map<LpexView, Long> opened = new WeakHashMap<LpexView, Long>();
+    // over every view timed so far, in microseconds
+    private static long viewsTimed = 0;
+    private static long totalReady = 0;
+    private static long maxReady = 0;
+
     public static void userProfile(LpexView lpexView) {
+        long start = System.nanoTime();
 
-        // semicolon at EOL and comment
-        lpexView.defineAction("insertSemicolon2Action", new LpexAction() {
-
-            public void doAction(LpexView view) {
-                // go to the end of the line
-                view.doAction(view.actionId("contextEnd"));
-                // insert a semicolon and comment string
-                view.doCommand("insertText ; /*  */");
-                // position the cursor in the middle of the comment
-                view.doAction(view.actionId("left"));
-                view.doAction(view.actionId("left"));
-                view.doAction(view.actionId("left"));
-            }
+        for (String[] action : ACTIONS) {
+            lpexView.doCommand("set actionClass." + action[0] + " " + action[1]);
+        }
 
-            public boolean available(LpexView view) {
-                // allow the action to run for any visible text line in a
-                // writable document
-                return view.currentElement() != 0 && !view.queryOn("readonly");
-            }
-        });
-
-        
-        // register a listener for when the view is shown
-        // https://www.ibm.com/support/knowledgecenter/SSAE4W_9.6.0/com.ibm.lpex.doc.isv/api/com/ibm/lpex/core/LpexViewAdapter.html
-        lpexView.addLpexViewListener(new LpexViewAdapter() {
-            // called after the updateProfile command has completed
-            public void shown(LpexView view) {
-                handleShown(view);
-            }
-        });
+        // the profile is run again whenever it's updated; don't listen twice
+        lpexView.removeLpexViewListener(SHOWN);
+        lpexView.addLpexViewListener(SHOWN);
+
+        // the background conversion preview is installed by the first
+        // convert or preview action in the view, not here
 
         // Assign keys "Ctrl+5" to run insertSemicolon2Action
         lpexView.doCommand("set keyAction.c-5 insertSemicolon2Action");
@@ -46,6 +62,12 @@ public class UserProfile {
         // doesn't seem to work; maybe preload() is too early?
 //        lpexView.doDefaultCommand("set insertMode on");
 
+        if (Trace.enabled()) {
+            Trace.trace("userProfile " + (System.nanoTime() - start) / 1000 + " us");
+            synchronized (opened) {
+                opened.put(lpexView, start);
+            }
+        }
     }
 
     // runs when the view is finished being displayed
@@ -53,6 +75,22 @@ public class UserProfile {
     protected static void handleShown(LpexView view) {
         // force insert mode
         view.doDefaultCommand("set insertMode on");
+
+        // time to first keystroke: from the profile starting to the view taking input.
+        // Open a batch of members with tracing on and the last line has the spread
+        Long start;
+        synchronized (opened) {
+            start = opened.remove(view);
+            if (start == null) {
+                return;
+            }
+            long ready = (System.nanoTime() - start) / 1000;
+            viewsTimed++;
+            totalReady += ready;
+            maxReady = Math.max(maxReady, ready);
+            Trace.trace("view ready for input " + ready + " us after userProfile; " + viewsTimed +
+                    " views, mean " + totalReady / viewsTimed + " us, max " + maxReady + " us");
+        }
     }
 
-}
\ No newline at end of file
+}